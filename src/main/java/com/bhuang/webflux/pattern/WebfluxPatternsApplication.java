@@ -3,7 +3,7 @@ package com.bhuang.webflux.pattern;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication(scanBasePackages = "com.bhuang.webflux.pattern.${sec}")
+@SpringBootApplication(scanBasePackages = {"com.bhuang.webflux.pattern.${sec}", "com.bhuang.webflux.pattern.common"})
 public class WebfluxPatternsApplication {
 
 	public static void main(String[] args) {
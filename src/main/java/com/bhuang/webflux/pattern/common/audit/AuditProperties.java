@@ -0,0 +1,32 @@
+package com.bhuang.webflux.pattern.common.audit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+audit.*  the order audit log written by AuditSink
+ */
+@Data
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+    private Path directory;
+    private String fileName = "audit";
+    private int capacity = 8192;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    // BLOCK only: how long a producer waits for a free slot before the record is dropped anyway
+    private Duration blockTimeout = Duration.ofMillis(10);
+    private int batchSize = 256;
+    private DataSize maxFileSize = DataSize.ofMegabytes(64);
+    private int maxFiles = 5;
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+}
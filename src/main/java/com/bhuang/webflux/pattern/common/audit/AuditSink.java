@@ -0,0 +1,178 @@
+package com.bhuang.webflux.pattern.common.audit;
+
+import com.bhuang.webflux.pattern.common.util.RingBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+asynchronous audit log.
+ - record(..) only puts the record into a bounded lock-free ring buffer, nothing is serialized or written on the caller's thread
+ - one background thread drains the ring in batches, writes one json line per record through a single reused stream
+   and flushes once per batch
+ - <file-name>.log rolls to <file-name>.1.log ... when it reaches max-file-size, the oldest of max-files is deleted
+ - ring full: DROP drops the record right away, BLOCK parks the caller for up to block-timeout first.
+   BLOCK stalls the event loop it is called from, DROP is the one to use on the request path.
+lazy: common is scanned for every section, the sink (its directory, file and writer thread) is only created for the
+sections that inject it
+ */
+@Lazy
+@Component
+public class AuditSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditSink.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private final AuditProperties properties;
+    private final ObjectMapper mapper;
+    private final RingBuffer<Entry> ring;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private volatile boolean running;
+    private Thread writer;
+    private OutputStream out;
+    private long fileSize;
+
+    public AuditSink(AuditProperties properties, ObjectMapper mapper, MeterRegistry registry) {
+        this.properties = properties;
+        this.mapper = mapper;
+        this.ring = new RingBuffer<>(properties.getCapacity());
+        this.writtenCounter = Counter.builder("audit.records").tag("result", "written").register(registry);
+        this.droppedCounter = Counter.builder("audit.records").tag("result", "dropped")
+                                     .description("records dropped because the ring buffer was full")
+                                     .register(registry);
+        this.failedCounter = Counter.builder("audit.records").tag("result", "failed")
+                                    .description("records that could not be serialized or written")
+                                    .register(registry);
+        Gauge.builder("audit.queue.size", this.ring, RingBuffer::size).register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(this.properties.getDirectory());
+        this.openFile();
+        this.running = true;
+        this.writer = new Thread(this::drainLoop, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        this.running = false;
+        LockSupport.unpark(this.writer);
+        this.writer.join();
+        this.out.close();
+    }
+
+    // never throws, false when the record was dropped
+    public boolean record(String type, Object record){
+        var entry = new Entry(System.currentTimeMillis(), type, record);
+        if(this.ring.offer(entry))
+            return true;
+        if(AuditProperties.OverflowPolicy.BLOCK.equals(this.properties.getOverflowPolicy()) && this.offerBlocking(entry))
+            return true;
+        this.droppedCounter.increment();
+        return false;
+    }
+
+    private boolean offerBlocking(Entry entry){
+        var deadline = System.nanoTime() + this.properties.getBlockTimeout().toNanos();
+        while (System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            if(this.ring.offer(entry))
+                return true;
+        }
+        return false;
+    }
+
+    private void drainLoop(){
+        while (this.running || this.ring.size() > 0) {
+            var written = this.drainBatch();
+            if(written == 0)
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private int drainBatch(){
+        var count = 0;
+        Entry entry;
+        while (count < this.properties.getBatchSize() && Objects.nonNull(entry = this.ring.poll())) {
+            this.write(entry);
+            count++;
+        }
+        if(count > 0)
+            this.flush();
+        return count;
+    }
+
+    private void write(Entry entry){
+        try {
+            var bytes = this.mapper.writeValueAsBytes(entry);
+            if(this.fileSize + bytes.length > this.properties.getMaxFileSize().toBytes())
+                this.roll();
+            this.out.write(bytes);
+            this.out.write(NEW_LINE);
+            this.fileSize += bytes.length + NEW_LINE.length;
+            this.writtenCounter.increment();
+        } catch (IOException | RuntimeException e) {
+            this.failedCounter.increment();
+            logger.warn("audit record of type {} could not be written", entry.type(), e);
+        }
+    }
+
+    private void flush(){
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            logger.warn("audit log could not be flushed", e);
+        }
+    }
+
+    private void roll() throws IOException {
+        this.out.close();
+        var maxFiles = this.properties.getMaxFiles();
+        Files.deleteIfExists(this.file(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 0; i--)
+            if(Files.exists(this.file(i)))
+                Files.move(this.file(i), this.file(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        this.openFile();
+    }
+
+    private void openFile() throws IOException {
+        var file = this.file(0);
+        this.out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        this.fileSize = Files.size(file);
+    }
+
+    // 0 = the current file
+    private Path file(int index){
+        var name = this.properties.getFileName() + (index == 0 ? "" : "." + index) + ".log";
+        return this.properties.getDirectory().resolve(name);
+    }
+
+    private record Entry(long timestamp, String type, Object record) {
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.bhuang.webflux.pattern.common.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+the meters every cache publishes, tagged with its name:
+ cache.gets{result=hit|miss}, cache.evictions (size and expiry), cache.load.duration{result=success|failure}, cache.size.
+passed to Caffeine.recordStats, or called directly by a cache that counts its own gets.
+ */
+public class CacheMetrics implements StatsCounter {
+
+    private final String name;
+    private final MeterRegistry registry;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Timer loadSuccessTimer;
+    private final Timer loadFailureTimer;
+
+    public CacheMetrics(String name, MeterRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+        this.hitCounter = this.gets("hit");
+        this.missCounter = this.gets("miss");
+        this.evictionCounter = Counter.builder("cache.evictions").tag("cache", name).register(registry);
+        this.loadSuccessTimer = Timer.builder("cache.load.duration").tag("cache", name).tag("result", "success")
+                                     .publishPercentiles(0.5, 0.99).register(registry);
+        this.loadFailureTimer = Timer.builder("cache.load.duration").tag("cache", name).tag("result", "failure")
+                                     .register(registry);
+    }
+
+    // another cache.gets result next to hit / miss, e.g. a caller that joined a load in flight
+    public Counter gets(String result){
+        return Counter.builder("cache.gets").tag("cache", this.name).tag("result", result).register(this.registry);
+    }
+
+    public void size(Cache<?, ?> cache){
+        Gauge.builder("cache.size", cache, Cache::estimatedSize).tag("cache", this.name).register(this.registry);
+    }
+
+    @Override
+    public void recordHits(int count) {
+        this.hitCounter.increment(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        this.missCounter.increment(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        this.loadSuccessTimer.record(loadTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        this.loadFailureTimer.record(loadTime, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordEviction(int weight, RemovalCause cause) {
+        this.evictionCounter.increment();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.of((long) this.hitCounter.count(),
+                             (long) this.missCounter.count(),
+                             this.loadSuccessTimer.count(),
+                             this.loadFailureTimer.count(),
+                             (long) (this.loadSuccessTimer.totalTime(TimeUnit.NANOSECONDS) + this.loadFailureTimer.totalTime(TimeUnit.NANOSECONDS)),
+                             (long) this.evictionCounter.count(),
+                             (long) this.evictionCounter.count());
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import com.bhuang.webflux.pattern.common.compensation.CompensationFailure;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+one call for a whole batch of compensations (refunds, restores, cancellations) to a downstream's bulk endpoint.
+ - the bulk endpoint is opt-in (enabled), without it every item is sent on its own through the single call
+ - the items are only sent on their own when the bulk call certainly did nothing:
+   404 / 405 / 501 (the service does not have the endpoint, it is not asked again after that)
+   or a connection that could not be opened, so the request never went out
+ - any other error (a response timeout, a 5xx, a connection closed mid-request) may come after the service applied
+   the batch, sending every item again would apply it twice. the batch fails with that error instead,
+   the caller retries / dead-letters it
+ - fails with CompensationFailure listing the orders whose single call did not succeed
+ */
+public class BulkCall<T> {
+
+    private static final int SINGLE_CALL_CONCURRENCY = 8;
+
+    private final WebClient client;
+    private final String uri;
+    private final boolean enabled;
+    private final Function<T, Mono<Boolean>> single;
+    private final Function<T, UUID> orderId;
+    private volatile boolean unsupported;
+
+    // single: the call for one item, true when it succeeded
+    public BulkCall(WebClient client, String uri, boolean enabled, Function<T, Mono<Boolean>> single, Function<T, UUID> orderId) {
+        this.client = client;
+        this.uri = uri;
+        this.enabled = enabled;
+        this.single = single;
+        this.orderId = orderId;
+    }
+
+    public Mono<Void> call(List<T> items){
+        if(items.isEmpty())
+            return Mono.empty();
+        if(!this.enabled || this.unsupported)
+            return this.callEach(items);
+        return this.client
+                .post()
+                .uri(this.uri)
+                .bodyValue(items)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .onErrorResume(this::didNothing, ex -> {
+                    if(ex instanceof WebClientResponseException)
+                        this.unsupported = true;
+                    return this.callEach(items);
+                });
+    }
+
+    private boolean didNothing(Throwable ex){
+        if(ex instanceof WebClientResponseException e)
+            return e.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)
+                    || e.getStatusCode().isSameCodeAs(HttpStatus.METHOD_NOT_ALLOWED)
+                    || e.getStatusCode().isSameCodeAs(HttpStatus.NOT_IMPLEMENTED);
+        // connection refused / connect timeout
+        return ex instanceof WebClientRequestException && ex.getCause() instanceof ConnectException;
+    }
+
+    private Mono<Void> callEach(List<T> items){
+        return Flux.fromIterable(items)
+                   .flatMap(item -> this.single.apply(item)
+                                               .defaultIfEmpty(false)
+                                               .filter(succeeded -> !succeeded)
+                                               .map(failed -> this.orderId.apply(item)), SINGLE_CALL_CONCURRENCY)
+                   .collect(Collectors.toSet())
+                   .flatMap(failed -> failed.isEmpty() ? Mono.empty() : Mono.error(new CompensationFailure(failed)));
+    }
+
+}
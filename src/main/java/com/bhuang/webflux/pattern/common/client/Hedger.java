@@ -0,0 +1,124 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import com.bhuang.webflux.pattern.common.util.RollingPercentile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+hedged requests:
+ if the first call has not answered after the hedge delay, one duplicate call is fired.
+ whichever answers first wins, the other one is cancelled.
+
+ - the delay is the observed latency percentile of this client (or the fixed delay while there are not enough samples)
+ - hedges are limited by a token budget: every call earns budgetPercent / 100 token, a hedge costs 1 token.
+   so during an outage hedging stops by itself instead of doubling the load.
+ - a failed / empty hedge never wins, the result is then whatever the first call returns
+ - client.hedge.won only counts the hedges whose value was actually returned, not the ones that lost the race late
+ - an error of the first call while the hedge is in flight does not end the race either,
+   it is only returned once the hedge has failed / come back empty too
+ - only the first call is timed, also when it is cancelled because the hedge won (the time until then is a lower bound).
+   timing the hedges would skew the percentile low: a hedge only ever counts when it beat a slow first call.
+ */
+public class Hedger {
+
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final boolean enabled;
+    private final Duration delay;
+    private final double percentile;
+    private final long tokensPerCall;
+    private final AtomicLong tokens = new AtomicLong();
+    private final RollingPercentile latencies = new RollingPercentile(1000, 100);
+    private final Counter issuedCounter;
+    private final Counter wonCounter;
+    private final Counter throttledCounter;
+
+    public Hedger(String name, boolean enabled, Duration delay, double percentile, double budgetPercent, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.delay = delay;
+        this.percentile = percentile;
+        this.tokensPerCall = (long) (budgetPercent / 100 * TOKEN);
+        this.issuedCounter = Counter.builder("client.hedge.issued").tag("client", name).register(registry);
+        this.wonCounter = Counter.builder("client.hedge.won").tag("client", name).register(registry);
+        this.throttledCounter = Counter.builder("client.hedge.throttled").tag("client", name).register(registry);
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call){
+        if(!this.enabled)
+            return call.get();
+        return Mono.defer(() -> {
+            this.deposit();
+            var fired = new AtomicBoolean();
+            var hedgeLost = Sinks.empty();
+            var hedged = Mono.delay(this.hedgeDelay())
+                             .filter(tick -> this.withdraw())
+                             .flatMap(tick -> {
+                                 fired.set(true);
+                                 this.issuedCounter.increment();
+                                 return call.get();
+                             })
+                             .map(v -> new Answer<>(v, true))
+                             .onErrorResume(ex -> Mono.empty())
+                             .switchIfEmpty(Mono.defer(() -> {
+                                 hedgeLost.tryEmitEmpty();
+                                 return Mono.<Answer<T>>never();
+                             }));
+            var primary = this.timed(call.get())
+                              .map(v -> new Answer<>(v, false))
+                              .onErrorResume(ex -> fired.get() ? hedgeLost.asMono().then(Mono.error(ex)) : Mono.error(ex));
+            return Mono.firstWithSignal(primary, hedged)
+                       .doOnNext(answer -> {
+                           if(answer.hedge())
+                               this.wonCounter.increment();
+                       })
+                       .map(Answer::value);
+        });
+    }
+
+    private Duration hedgeDelay(){
+        if(this.percentile <= 0)
+            return this.delay;
+        return this.latencies.percentile(this.percentile).orElse(this.delay);
+    }
+
+    private <T> Mono<T> timed(Mono<T> call){
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var recorded = new AtomicBoolean();
+            Runnable record = () -> {
+                if(recorded.compareAndSet(false, true))
+                    this.latencies.record(Duration.ofNanos(System.nanoTime() - start));
+            };
+            return call.doOnSuccess(v -> record.run())
+                       .doOnCancel(record);
+        });
+    }
+
+    private void deposit(){
+        this.tokens.updateAndGet(t -> Math.min(MAX_TOKENS, t + this.tokensPerCall));
+    }
+
+    private boolean withdraw(){
+        var current = this.tokens.get();
+        while (current >= TOKEN) {
+            if(this.tokens.compareAndSet(current, current - TOKEN))
+                return true;
+            current = this.tokens.get();
+        }
+        this.throttledCounter.increment();
+        return false;
+    }
+
+    // hedge = the value came from the hedge, told apart only once the race is decided
+    private record Answer<T>(T value, boolean hedge) {
+    }
+
+}
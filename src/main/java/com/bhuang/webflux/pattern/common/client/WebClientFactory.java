@@ -0,0 +1,84 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+one connection pool per downstream, sized from WebClientProperties.
+with h2c enabled, concurrent requests to the same downstream are multiplexed as HTTP/2 streams:
+a new connection is only opened once every open one carries max-concurrent-streams requests.
+max-connections stays the number of concurrent requests in both modes, h2c opens at most
+max-connections / max-concurrent-streams connections (at least one). the pool does not count the streams of a
+connection that is still being opened, so a burst against an empty pool would otherwise open one per request.
+pools publish reactor.netty.connection.provider.* gauges (active / idle / pending connections) through Micrometer.
+ */
+@Component
+public class WebClientFactory implements DisposableBean {
+
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final WebClientProperties properties;
+    private final ObjectProvider<WebClient.Builder> builders;
+
+    public WebClientFactory(WebClientProperties properties, ObjectProvider<WebClient.Builder> builders) {
+        this.properties = properties;
+        this.builders = builders;
+    }
+
+    public WebClient create(String downstream, String baseUrl){
+        var pool = this.properties.resolve(downstream);
+        var provider = this.providers.computeIfAbsent(downstream, name -> this.buildProvider(name, pool));
+        var httpClient = HttpClient.create(provider)
+                                   .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+                                   .option(ChannelOption.SO_KEEPALIVE, pool.getKeepAlive());
+        if(Objects.nonNull(pool.getResponseTimeout()))
+            httpClient = httpClient.responseTimeout(pool.getResponseTimeout());
+        if(pool.getH2c())
+            httpClient = httpClient.protocol(HttpProtocol.H2C);
+        // the auto-configured builder is a prototype: a fresh one per client, with every WebClientCustomizer applied
+        return this.builders.getObject()
+                            .baseUrl(baseUrl)
+                            .clientConnector(new ReactorClientHttpConnector(httpClient))
+                            .build();
+    }
+
+    private ConnectionProvider buildProvider(String name, WebClientProperties.Pool pool){
+        var builder = ConnectionProvider.builder(name);
+        if(pool.getH2c())
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                                                             .maxConnections(this.h2cConnections(pool))
+                                                             .maxConcurrentStreams(pool.getMaxConcurrentStreams())
+                                                             .build());
+        else
+            builder.maxConnections(pool.getMaxConnections());
+        return builder.pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                      .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                      .maxIdleTime(pool.getMaxIdleTime())
+                      .maxLifeTime(pool.getMaxLifeTime())
+                      .evictInBackground(pool.getEvictionInterval())
+                      .metrics(true)
+                      .build();
+    }
+
+    private int h2cConnections(WebClientProperties.Pool pool){
+        var streams = pool.getMaxConcurrentStreams();
+        return (int) Math.max(1, (pool.getMaxConnections() + streams - 1) / streams);
+    }
+
+    @Override
+    public void destroy() {
+        this.providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+webclient.defaults.*                 applies to every downstream
+webclient.downstreams.<name>.*       overrides for one downstream (e.g. webclient.downstreams.sec02-delta.max-connections)
+ */
+@Data
+@ConfigurationProperties(prefix = "webclient")
+public class WebClientProperties {
+
+    private Pool defaults = Pool.standard();
+    private Map<String, Pool> downstreams = new HashMap<>();
+
+    public Pool resolve(String name){
+        var overrides = this.downstreams.getOrDefault(name, new Pool());
+        var pool = new Pool();
+        pool.setMaxConnections(Objects.requireNonNullElse(overrides.getMaxConnections(), this.defaults.getMaxConnections()));
+        pool.setPendingAcquireMaxCount(Objects.requireNonNullElse(overrides.getPendingAcquireMaxCount(), this.defaults.getPendingAcquireMaxCount()));
+        pool.setPendingAcquireTimeout(Objects.requireNonNullElse(overrides.getPendingAcquireTimeout(), this.defaults.getPendingAcquireTimeout()));
+        pool.setMaxIdleTime(Objects.requireNonNullElse(overrides.getMaxIdleTime(), this.defaults.getMaxIdleTime()));
+        pool.setMaxLifeTime(Objects.requireNonNullElse(overrides.getMaxLifeTime(), this.defaults.getMaxLifeTime()));
+        pool.setEvictionInterval(Objects.requireNonNullElse(overrides.getEvictionInterval(), this.defaults.getEvictionInterval()));
+        pool.setConnectTimeout(Objects.requireNonNullElse(overrides.getConnectTimeout(), this.defaults.getConnectTimeout()));
+        // the only one without a default, so both may be null
+        pool.setResponseTimeout(Objects.nonNull(overrides.getResponseTimeout()) ? overrides.getResponseTimeout() : this.defaults.getResponseTimeout());
+        pool.setKeepAlive(Objects.requireNonNullElse(overrides.getKeepAlive(), this.defaults.getKeepAlive()));
+        pool.setH2c(Objects.requireNonNullElse(overrides.getH2c(), this.defaults.getH2c()));
+        pool.setMaxConcurrentStreams(Objects.requireNonNullElse(overrides.getMaxConcurrentStreams(), this.defaults.getMaxConcurrentStreams()));
+        return pool;
+    }
+
+    // null means "not set", so a downstream only overrides what it configures
+    @Data
+    public static class Pool {
+
+        private Integer maxConnections;
+        private Integer pendingAcquireMaxCount;
+        private Duration pendingAcquireTimeout;
+        private Duration maxIdleTime;
+        private Duration maxLifeTime;
+        private Duration evictionInterval;
+        private Duration connectTimeout;
+        // unset = no timeout, a streaming downstream must not have one
+        private Duration responseTimeout;
+        private Boolean keepAlive;
+        // HTTP/2 cleartext with prior knowledge: the downstream must accept h2c
+        private Boolean h2c;
+        private Long maxConcurrentStreams;
+
+        private static Pool standard(){
+            var pool = new Pool();
+            pool.setMaxConnections(500);
+            pool.setPendingAcquireMaxCount(1000);
+            pool.setPendingAcquireTimeout(Duration.ofSeconds(45));
+            pool.setMaxIdleTime(Duration.ofSeconds(30));
+            pool.setMaxLifeTime(Duration.ofMinutes(5));
+            pool.setEvictionInterval(Duration.ofSeconds(30));
+            pool.setConnectTimeout(Duration.ofSeconds(2));
+            pool.setKeepAlive(true);
+            pool.setH2c(false);
+            pool.setMaxConcurrentStreams(100L);
+            return pool;
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// an order one orchestrator gave up compensating, kept for a manual replay
+@Data
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor(staticName = "create")
+public class CompensationDeadLetter<C> {
+
+    private String orchestrator;
+    private String error;
+    private C order;
+
+}
@@ -0,0 +1,20 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import java.util.Set;
+import java.util.UUID;
+
+// the orders of a compensation batch that could not be compensated, the others are done
+public class CompensationFailure extends RuntimeException{
+
+    private final Set<UUID> orderIds;
+
+    public CompensationFailure(Set<UUID> orderIds) {
+        super(orderIds.size() + " order(s) could not be compensated");
+        this.orderIds = orderIds;
+    }
+
+    public Set<UUID> getOrderIds() {
+        return orderIds;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+<prefix>.journal.*       where failed orders wait for their compensation (see CompensationQueue)
+<prefix>.*               how the workers read and compensate them
+<prefix>.retry.*         backoff for the orders of a batch that could not be compensated
+<prefix>.dead-letter.*   where the orders go once the retries are used up
+every section binds its own prefix, e.g. sec03.cancellation
+ */
+@Data
+public class CompensationProperties {
+
+    private Journal journal = new Journal();
+    private Duration pollInterval = Duration.ofMillis(200);
+    private int batchSize = 256;
+    private Duration batchWindow = Duration.ofMillis(500);
+    // batches compensated at the same time, per step
+    private int concurrency = 4;
+    private Retry retry = new Retry();
+    private DeadLetter deadLetter = new DeadLetter();
+
+    @Data
+    public static class Journal {
+
+        private Path directory;
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        private int maxSegments = 64;
+
+    }
+
+    @Data
+    public static class Retry {
+
+        private int maxAttempts = 5;
+        private Duration minBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(1);
+
+    }
+
+    @Data
+    public static class DeadLetter {
+
+        private Path directory;
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import com.bhuang.webflux.pattern.common.journal.MappedJournal;
+import com.bhuang.webflux.pattern.common.orchestration.Step;
+import com.bhuang.webflux.pattern.common.orchestration.StepGraph;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+failed orders of a saga, compensated in the background by one worker per step.
+failed orders are appended to a bounded journal on local disk instead of an in-memory sink:
+a downstream outage can no longer grow the backlog without limit, and a restart does not lose it.
+every step reads the journal through its own cursor (named after the step),
+groups what it reads into batches of up to batch-size orders or batch-window, compensates each batch with one call
+and commits once the batch is done, so after a restart it continues where it stopped.
+ - at most concurrency batches per step are compensated at the same time, commits stay in journal order
+ - the orders of a batch that failed are retried with backoff, after max-attempts they go to the dead-letter journal
+ - steps are compensated in reverse topological order: a step only reads up to the commit of the slowest of its
+   dependents (the steps that list it as a prerequisite), so e.g. a payment is refunded only once its shipping
+   and inventory compensations are done or dead-lettered
+ - nothing is dropped silently: an order the journal has no room for is rejected to the caller (CompensationRejected),
+   and a batch whose dead letters do not fit waits, uncommitted, until they do. nothing reads the dead-letter journal,
+   so that is until it is cleared and the service restarted: the step stops, its queue depth grows and new orders
+   are rejected once the journal is full.
+   counted as order.compensation.rejected{journal=cancellation|dead-letter}
+ */
+public class CompensationQueue<C, S extends Step<C>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompensationQueue.class);
+
+    private final CompensationProperties properties;
+    private final StepGraph<S> graph;
+    private final BiFunction<S, List<C>, Mono<Void>> compensation;
+    private final Class<C> type;
+    private final Function<C, UUID> orderId;
+    private final ObjectMapper mapper;
+    private final MeterRegistry registry;
+    private final Disposable.Composite workers = Disposables.composite();
+    private final Counter rejectedCounter;
+    private final Counter deadLetterRejectedCounter;
+    private MappedJournal journal;
+    private MappedJournal deadLetters;
+
+    /*
+    compensation: compensates a batch of failed orders for one step, the orders the step did not succeed for are skipped.
+    fails with CompensationFailure listing the orders that could not be compensated, only those are retried.
+    type / orderId: how an order is read back from the journal and identified.
+     */
+    public CompensationQueue(CompensationProperties properties,
+                             StepGraph<S> graph,
+                             BiFunction<S, List<C>, Mono<Void>> compensation,
+                             Class<C> type,
+                             Function<C, UUID> orderId,
+                             ObjectMapper mapper,
+                             MeterRegistry registry) {
+        this.properties = properties;
+        this.graph = graph;
+        this.compensation = compensation;
+        this.type = type;
+        this.orderId = orderId;
+        this.mapper = mapper;
+        this.registry = registry;
+        this.rejectedCounter = Counter.builder("order.compensation.rejected").tag("journal", "cancellation")
+                                      .description("failed orders that could not be queued for compensation")
+                                      .register(registry);
+        this.deadLetterRejectedCounter = Counter.builder("order.compensation.rejected").tag("journal", "dead-letter")
+                                                .description("dead letters that did not fit (retried) or could not be written (dropped)")
+                                                .register(registry);
+    }
+
+    public void start() throws IOException {
+        var segmentSize = (int) this.properties.getJournal().getSegmentSize().toBytes();
+        var maxSegments = this.properties.getJournal().getMaxSegments();
+        this.journal = new MappedJournal(this.properties.getJournal().getDirectory(), segmentSize, maxSegments);
+        this.deadLetters = new MappedJournal(this.properties.getDeadLetter().getDirectory(), segmentSize, maxSegments);
+        this.graph.topologicalOrder().forEach(step -> this.workers.add(this.work(step)));
+    }
+
+    public void stop(){
+        this.workers.dispose();
+        this.journal.close();
+        this.deadLetters.close();
+    }
+
+    /*
+    appending may touch the disk (a new segment, a full one forced), so it runs off the event loop.
+    fails with CompensationRejected when the journal is full or the order can not be written.
+     */
+    public Mono<Void> append(C order){
+        return Mono.<Void>fromRunnable(() -> {
+                       byte[] payload;
+                       try {
+                           payload = this.mapper.writeValueAsBytes(order);
+                       } catch (IOException e) {
+                           throw this.reject(order, "it could not be written", e);
+                       }
+                       if(!this.journal.append(payload))
+                           throw this.reject(order, "the cancellation journal is full", null);
+                   })
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private CompensationRejected reject(C order, String reason, Throwable cause){
+        var rejected = new CompensationRejected(this.orderId.apply(order), reason, cause);
+        this.rejectedCounter.increment();
+        logger.error(rejected.getMessage(), cause);
+        return rejected;
+    }
+
+    // journal reads and checkpoint writes are file io, so they stay off the event loop
+    private Disposable work(S step){
+        var name = step.name();
+        var cursor = this.journal.cursor(name);
+        var dependents = this.graph.dependents(step).stream().map(d -> this.journal.cursor(d.name())).toList();
+        var inFlight = new AtomicLong();
+        var batchSizes = DistributionSummary.builder("order.compensation.batch.size")
+                                            .tag("orchestrator", name)
+                                            .description("failed orders compensated per call")
+                                            .register(this.registry);
+        var lag = Timer.builder("order.compensation.lag")
+                       .tag("orchestrator", name)
+                       .description("time from the order failing to its compensation being done")
+                       .publishPercentiles(0.5, 0.99)
+                       .register(this.registry);
+        var deadLettered = Counter.builder("order.compensation.dead.letters")
+                                  .tag("orchestrator", name)
+                                  .register(this.registry);
+        Gauge.builder("order.compensation.queue.depth", cursor, MappedJournal.Cursor::pending)
+             .tag("orchestrator", name)
+             .description("failed orders not compensated yet")
+             .register(this.registry);
+        Gauge.builder("order.compensation.inflight", inFlight, AtomicLong::get)
+             .tag("orchestrator", name)
+             .description("failed orders being compensated right now")
+             .register(this.registry);
+        Gauge.builder("order.compensation.oldest.pending", cursor, c -> c.oldestPending().stream().map(t -> System.currentTimeMillis() - t).findFirst().orElse(0) / 1000.0)
+             .tag("orchestrator", name)
+             .description("age of the oldest failed order not compensated yet")
+             .baseUnit("seconds")
+             .register(this.registry);
+        return Flux.interval(this.properties.getPollInterval())
+                   .onBackpressureDrop()
+                   .publishOn(Schedulers.boundedElastic())
+                   .concatMap(tick -> this.poll(cursor, dependents), 1)
+                   .bufferTimeout(this.properties.getBatchSize(), this.properties.getBatchWindow(), true)
+                   .doOnNext(records -> inFlight.addAndGet(records.size()))
+                   .flatMapSequential(records -> this.compensate(step, records, deadLettered).thenReturn(records), this.properties.getConcurrency(), 1)
+                   .publishOn(Schedulers.boundedElastic())
+                   .doOnNext(records -> {
+                       cursor.commit(records.get(records.size() - 1));
+                       inFlight.addAndGet(-records.size());
+                       batchSizes.record(records.size());
+                       var now = System.currentTimeMillis();
+                       records.forEach(r -> lag.record(now - r.timestamp(), TimeUnit.MILLISECONDS));
+                   })
+                   .doOnError(ex -> logger.error("compensation worker {} failed, restarting from its last commit", name, ex))
+                   .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, this.properties.getPollInterval())
+                                   .doBeforeRetry(signal -> {
+                                       cursor.rewind();
+                                       inFlight.set(0);
+                                   }))
+                   .subscribe();
+    }
+
+    // everything there is to read right now (and its dependents are done with), one journal batch at a time
+    private Flux<MappedJournal.Record> poll(MappedJournal.Cursor cursor, List<MappedJournal.Cursor> dependents){
+        return Mono.fromCallable(() -> cursor.poll(this.properties.getBatchSize(), this.limit(dependents)))
+                   .repeat()
+                   .takeWhile(records -> !records.isEmpty())
+                   .concatMapIterable(Function.identity());
+    }
+
+    private long limit(List<MappedJournal.Cursor> dependents){
+        return dependents.stream().mapToLong(MappedJournal.Cursor::committed).min().orElse(Long.MAX_VALUE);
+    }
+
+    // only the orders that failed are retried, the ones still failing after the last attempt are dead-lettered
+    private Mono<Void> compensate(S step, List<MappedJournal.Record> records, Counter deadLettered){
+        var retry = this.properties.getRetry();
+        var remaining = new AtomicReference<>(records.stream()
+                                                     .map(this::read)
+                                                     .flatMap(Optional::stream)
+                                                     .toList());
+        return Mono.defer(() -> this.compensation.apply(step, remaining.get()))
+                   .doOnError(CompensationFailure.class, ex -> remaining.updateAndGet(orders ->
+                           orders.stream().filter(order -> ex.getOrderIds().contains(this.orderId.apply(order))).toList()
+                   ))
+                   .retryWhen(Retry.backoff(retry.getMaxAttempts(), retry.getMinBackoff()).maxBackoff(retry.getMaxBackoff()))
+                   .onErrorResume(ex -> this.deadLetter(step, remaining.get(), Exceptions.isRetryExhausted(ex) ? ex.getCause() : ex, deadLettered));
+    }
+
+    // written one by one, a letter that does not fit is retried with backoff until it does
+    private Mono<Void> deadLetter(S step, List<C> orders, Throwable error, Counter deadLettered){
+        var name = step.name();
+        var retry = this.properties.getRetry();
+        return Flux.fromIterable(orders)
+                   .concatMap(order -> Mono.<Void>fromRunnable(() -> this.appendDeadLetter(name, order, error))
+                                           .retryWhen(Retry.backoff(Long.MAX_VALUE, retry.getMinBackoff())
+                                                           .maxBackoff(retry.getMaxBackoff())
+                                                           .scheduler(Schedulers.boundedElastic())
+                                                           .filter(CompensationRejected.class::isInstance)))
+                   .doFirst(() -> logger.error("{} gave up compensating {} orders", name, orders.size(), error))
+                   .doOnComplete(() -> deadLettered.increment(orders.size()))
+                   .then()
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void appendDeadLetter(String step, C order, Throwable error){
+        var id = this.orderId.apply(order);
+        byte[] letter;
+        try {
+            letter = this.mapper.writeValueAsBytes(CompensationDeadLetter.create(step, String.valueOf(error), order));
+        } catch (IOException e) {
+            this.deadLetterRejectedCounter.increment();
+            logger.error("order {} could not be written to the dead-letter journal, it is dropped", id, e);
+            return;
+        }
+        if(!this.deadLetters.append(letter)){
+            this.deadLetterRejectedCounter.increment();
+            logger.error("dead-letter journal is full, {} waits to dead-letter order {}", step, id);
+            throw new CompensationRejected(id, "the dead-letter journal is full", null);
+        }
+    }
+
+    // an unreadable record is skipped, it would block the worker forever otherwise
+    private Optional<C> read(MappedJournal.Record record){
+        try {
+            return Optional.of(this.mapper.readValue(record.payload(), this.type));
+        } catch (IOException e) {
+            logger.error("skipping unreadable cancellation journal record before position {}", record.position(), e);
+            return Optional.empty();
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.UUID;
+
+// an order that could not be queued for compensation, nothing will undo the steps that succeeded for it
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CompensationRejected extends RuntimeException{
+
+    private final UUID orderId;
+
+    public CompensationRejected(UUID orderId, String reason, Throwable cause) {
+        super("order " + orderId + " is not queued for compensation: " + reason, cause);
+        this.orderId = orderId;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+}
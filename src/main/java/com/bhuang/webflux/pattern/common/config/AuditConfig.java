@@ -0,0 +1,10 @@
+package com.bhuang.webflux.pattern.common.config;
+
+import com.bhuang.webflux.pattern.common.audit.AuditProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(AuditProperties.class)
+public class AuditConfig {
+}
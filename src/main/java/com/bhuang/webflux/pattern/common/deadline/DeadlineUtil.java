@@ -0,0 +1,78 @@
+package com.bhuang.webflux.pattern.common.deadline;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/*
+end-to-end deadline:
+ the incoming X-Request-Timeout header (remaining budget in ms) is turned into an absolute deadline
+ and stored in the Reactor Context by DeadlineWebFilter.
+ every outbound call then waits at most min(local timeout, remaining budget)
+ and forwards the remaining budget to the next service with the same header.
+ */
+public class DeadlineUtil {
+
+    public static final String HEADER = "X-Request-Timeout";
+    private static final String DEADLINE_KEY = "deadline-nanos";
+
+    public static Context withDeadline(Context ctx, Duration timeout){
+        return ctx.put(DEADLINE_KEY, System.nanoTime() + timeout.toNanos());
+    }
+
+    // shared / cached work must not be cut short by the budget of whichever caller happened to start it
+    public static Context detach(Context ctx){
+        return ctx.delete(DEADLINE_KEY);
+    }
+
+    // empty when the request has no deadline, can be negative once the deadline has passed
+    public static Optional<Duration> remaining(ContextView ctx){
+        return ctx.<Long>getOrEmpty(DEADLINE_KEY)
+                  .map(deadline -> Duration.ofNanos(deadline - System.nanoTime()));
+    }
+
+    public static Duration budget(ContextView ctx, Duration localTimeout){
+        return remaining(ctx)
+                .map(remaining -> remaining.isNegative() ? Duration.ZERO : remaining)
+                .filter(remaining -> remaining.compareTo(localTimeout) < 0)
+                .orElse(localTimeout);
+    }
+
+    // .transform(DeadlineUtil.timeout(Duration.ofMillis(500))) instead of .timeout(Duration.ofMillis(500))
+    public static <T> Function<Mono<T>, Mono<T>> timeout(Duration localTimeout){
+        return mono -> Mono.deferContextual(ctx -> mono.timeout(budget(ctx, localTimeout)));
+    }
+
+    // .transform(DeadlineUtil.take(Duration.ofSeconds(3))) instead of .take(Duration.ofSeconds(3))
+    public static <T> Function<Flux<T>, Flux<T>> take(Duration localTimeout){
+        return flux -> Flux.deferContextual(ctx -> flux.take(budget(ctx, localTimeout)));
+    }
+
+    /*
+    WebClient filter: fail fast when the budget is already spent,
+    otherwise forward the remaining budget and do not wait for the response longer than that.
+     */
+    public static ExchangeFilterFunction propagate(){
+        return (request, next) -> Mono.deferContextual(ctx -> {
+            var remaining = remaining(ctx);
+            if(remaining.isEmpty())
+                return next.exchange(request);
+            var budget = remaining.get();
+            if(budget.isZero() || budget.isNegative())
+                return Mono.error(new TimeoutException("deadline exceeded before calling " + request.url()));
+            var forwarded = ClientRequest.from(request)
+                                         .headers(headers -> headers.set(HEADER, String.valueOf(budget.toMillis())))
+                                         .build();
+            return next.exchange(forwarded).timeout(budget);
+        });
+    }
+
+}
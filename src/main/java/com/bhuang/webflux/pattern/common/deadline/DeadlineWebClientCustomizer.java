@@ -0,0 +1,18 @@
+package com.bhuang.webflux.pattern.common.deadline;
+
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/*
+applied to the auto-configured WebClient.Builder, so every client built from it propagates the deadline
+ */
+@Component
+public class DeadlineWebClientCustomizer implements WebClientCustomizer {
+
+    @Override
+    public void customize(WebClient.Builder webClientBuilder) {
+        webClientBuilder.filter(DeadlineUtil.propagate());
+    }
+
+}
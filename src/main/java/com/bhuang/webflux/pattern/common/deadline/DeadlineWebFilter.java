@@ -0,0 +1,34 @@
+package com.bhuang.webflux.pattern.common.deadline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+
+@Component
+public class DeadlineWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadlineWebFilter.class);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var header = exchange.getRequest().getHeaders().getFirst(DeadlineUtil.HEADER);
+        if(Objects.isNull(header))
+            return chain.filter(exchange);
+        try {
+            var timeout = Duration.ofMillis(Long.parseLong(header.trim()));
+            return chain.filter(exchange)
+                        .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, timeout));
+        } catch (NumberFormatException e) {
+            logger.warn("ignoring invalid {} header: {}", DeadlineUtil.HEADER, header);
+            return chain.filter(exchange);
+        }
+    }
+
+}
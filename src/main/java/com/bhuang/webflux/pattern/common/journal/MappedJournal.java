@@ -0,0 +1,349 @@
+package com.bhuang.webflux.pattern.common.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/*
+bounded, append-only journal on local disk, made of fixed size memory-mapped segment files.
+ - a record is [int length][long timestamp][payload]. length 0 = not written yet, -1 = the rest of the segment is unused.
+   the length is written last, so a half written record is never read back.
+ - every consumer reads at its own pace through a Cursor and commits what it has processed to <name>.checkpoint.
+   after a restart it starts again at its last commit, so records are delivered at least once.
+ - segments that every consumer has committed past are deleted.
+ - bounded: at most maxSegments segments, append returns false once they are all full of uncommitted records.
+ - records live in the page cache, they survive a restart of the process. a segment is forced to disk when it is full.
+ - only the in-memory bookkeeping happens under the journal lock. forcing a full segment, writing a checkpoint file
+   and deleting compacted segments happen after it is released, so a consumer committing never holds up an append.
+   a checkpoint on disk may lag behind the commit in memory, after a crash that only means a few more redeliveries.
+ - every method may touch the disk, call it from a thread that may block, never from an event loop.
+a position is segment number * segmentSize + offset, so segmentSize must not change between two runs on the same directory.
+ */
+public class MappedJournal implements Closeable {
+
+    private static final int HEADER = Integer.BYTES + Long.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final Map<String, Cursor> cursors = new HashMap<>();
+    private long writePosition;
+
+    public MappedJournal(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            for (var file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                var name = file.getFileName().toString();
+                this.segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), this.map(file));
+            }
+        }
+        if(this.segments.isEmpty())
+            this.segments.put(0L, this.map(this.segmentPath(0)));
+        this.writePosition = this.recoverWritePosition();
+    }
+
+    // false when the journal is full
+    public boolean append(byte[] payload){
+        if(payload.length == 0 || HEADER + payload.length > this.segmentSize)
+            throw new IllegalArgumentException("record size must be between 1 and " + (this.segmentSize - HEADER) + " bytes");
+        var io = new DeferredIo();
+        try {
+            return this.append(payload, io);
+        } finally {
+            io.run();
+        }
+    }
+
+    private synchronized boolean append(byte[] payload, DeferredIo io){
+        var offset = this.offset(this.writePosition);
+        var buffer = this.segments.get(this.segment(this.writePosition));
+        if(buffer != null && offset + HEADER + payload.length > this.segmentSize){
+            if(offset + Integer.BYTES <= this.segmentSize)
+                buffer.putInt(offset, END_OF_SEGMENT);
+            io.full = buffer;
+            this.writePosition = (this.segment(this.writePosition) + 1) * this.segmentSize;
+            buffer = null;
+        }
+        if(buffer == null){
+            buffer = this.newSegment(this.segment(this.writePosition), io);
+            if(buffer == null)
+                return false;
+            offset = 0;
+        }
+        buffer.putLong(offset + Integer.BYTES, System.currentTimeMillis());
+        buffer.put(offset + HEADER, payload);
+        buffer.putInt(offset, payload.length);
+        this.writePosition += HEADER + payload.length;
+        this.cursors.values().forEach(c -> c.pending++);
+        return true;
+    }
+
+    // one cursor per consumer name, it starts at the last committed position of that name
+    public synchronized Cursor cursor(String name){
+        return this.cursors.computeIfAbsent(name, n -> {
+            var committed = Math.max(this.readCheckpoint(n), this.segments.firstKey() * this.segmentSize);
+            var cursor = new Cursor(n, committed);
+            cursor.pending = this.count(committed, this.writePosition);
+            return cursor;
+        });
+    }
+
+    @Override
+    public synchronized void close(){
+        this.segments.values().forEach(MappedByteBuffer::force);
+        this.segments.clear();
+    }
+
+    private long recoverWritePosition(){
+        var last = this.segments.lastEntry();
+        var buffer = last.getValue();
+        var offset = 0;
+        while (offset + HEADER <= this.segmentSize) {
+            var length = buffer.getInt(offset);
+            if(length == 0)
+                break;
+            if(length == END_OF_SEGMENT){
+                offset = this.segmentSize;
+                break;
+            }
+            offset += HEADER + length;
+        }
+        return last.getKey() * this.segmentSize + offset;
+    }
+
+    private MappedByteBuffer newSegment(long number, DeferredIo io){
+        this.compact(io);
+        if(this.segments.size() >= this.maxSegments)
+            return null;
+        var buffer = this.map(this.segmentPath(number));
+        this.segments.put(number, buffer);
+        return buffer;
+    }
+
+    // the segments are only dropped here, io deletes their files. the buffers are unmapped by the garbage collector
+    private void compact(DeferredIo io){
+        var committed = this.cursors.values().stream().mapToLong(c -> c.committed).min().orElse(0);
+        var current = this.segment(this.writePosition);
+        var consumed = this.segments.headMap(Math.min(this.segment(committed), current), false);
+        for (var number : List.copyOf(consumed.keySet())) {
+            consumed.remove(number);
+            io.deleted.add(this.segmentPath(number));
+        }
+    }
+
+    private synchronized List<Record> read(Cursor cursor, int max, long limit){
+        var records = new ArrayList<Record>();
+        var end = Math.min(this.writePosition, limit);
+        while (records.size() < max && (cursor.readPosition = this.skipEnd(cursor.readPosition)) < end) {
+            var offset = this.offset(cursor.readPosition);
+            var buffer = this.segments.get(this.segment(cursor.readPosition));
+            var payload = new byte[buffer.getInt(offset)];
+            buffer.get(offset + HEADER, payload);
+            cursor.readPosition += HEADER + payload.length;
+            records.add(new Record(cursor.readPosition, buffer.getLong(offset + Integer.BYTES), payload));
+        }
+        return records;
+    }
+
+    private void commit(Cursor cursor, long position){
+        var io = new DeferredIo();
+        synchronized (this) {
+            if(position <= cursor.committed)
+                return;
+            cursor.pending -= this.count(cursor.committed, position);
+            cursor.committed = position;
+            this.compact(io);
+        }
+        cursor.checkpoint(position);
+        io.run();
+    }
+
+    private synchronized long committed(Cursor cursor){
+        return cursor.committed;
+    }
+
+    private synchronized void rewind(Cursor cursor){
+        cursor.readPosition = cursor.committed;
+    }
+
+    private synchronized long pending(Cursor cursor){
+        return cursor.pending;
+    }
+
+    private synchronized OptionalLong oldestPending(Cursor cursor){
+        var position = this.skipEnd(cursor.committed);
+        if(position >= this.writePosition)
+            return OptionalLong.empty();
+        return OptionalLong.of(this.segments.get(this.segment(position)).getLong(this.offset(position) + Integer.BYTES));
+    }
+
+    // number of records between two positions, only the headers are read
+    private long count(long from, long to){
+        var count = 0L;
+        var position = from;
+        while ((position = this.skipEnd(position)) < to) {
+            position += HEADER + this.segments.get(this.segment(position)).getInt(this.offset(position));
+            count++;
+        }
+        return count;
+    }
+
+    // the position itself, or the start of the next segment when the rest of this one is unused
+    private long skipEnd(long position){
+        if(position >= this.writePosition)
+            return position;
+        var offset = this.offset(position);
+        var length = offset + HEADER <= this.segmentSize ?
+                this.segments.get(this.segment(position)).getInt(offset) : END_OF_SEGMENT;
+        return length == END_OF_SEGMENT ? (this.segment(position) + 1) * this.segmentSize : position;
+    }
+
+    private long segment(long position){
+        return position / this.segmentSize;
+    }
+
+    private int offset(long position){
+        return (int) (position % this.segmentSize);
+    }
+
+    private Path segmentPath(long number){
+        return this.directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(Path file){
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long readCheckpoint(String name){
+        var file = this.directory.resolve(name + CHECKPOINT_SUFFIX);
+        try {
+            return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // write + rename, so a crash never leaves a torn checkpoint behind
+    private void writeCheckpoint(String name, long position){
+        var file = this.directory.resolve(name + CHECKPOINT_SUFFIX);
+        var tmp = this.directory.resolve(name + CHECKPOINT_SUFFIX + ".tmp");
+        try {
+            Files.write(tmp, String.valueOf(position).getBytes(StandardCharsets.US_ASCII));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void delete(Path file){
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // file work decided under the journal lock and done after it is released
+    private class DeferredIo implements Runnable {
+
+        private final List<Path> deleted = new ArrayList<>();
+        private MappedByteBuffer full;
+
+        @Override
+        public void run(){
+            if(this.full != null)
+                this.full.force();
+            this.deleted.forEach(MappedJournal.this::delete);
+        }
+
+    }
+
+    // position = where the next record starts, commit it once this record has been processed
+    public record Record(long position, long timestamp, byte[] payload) {
+    }
+
+    public class Cursor {
+
+        private final String name;
+        private long committed;
+        private long readPosition;
+        private long pending;
+        private long checkpointed;
+
+        private Cursor(String name, long committed) {
+            this.name = name;
+            this.committed = committed;
+            this.readPosition = committed;
+            this.checkpointed = committed;
+        }
+
+        // own lock, so two commits racing to disk never leave the older position behind
+        private synchronized void checkpoint(long position){
+            if(position <= this.checkpointed)
+                return;
+            MappedJournal.this.writeCheckpoint(this.name, position);
+            this.checkpointed = position;
+        }
+
+        // the next records after the last one read (not the last one committed), at most max
+        public List<Record> poll(int max){
+            return this.poll(max, Long.MAX_VALUE);
+        }
+
+        // same, but never past limit (a position), e.g. to stay behind the commits of another cursor
+        public List<Record> poll(int max, long limit){
+            return MappedJournal.this.read(this, max, limit);
+        }
+
+        // position of the last commit, every record before it has been processed
+        public long committed(){
+            return MappedJournal.this.committed(this);
+        }
+
+        public void commit(Record record){
+            MappedJournal.this.commit(this, record.position());
+        }
+
+        // read again from the last commit, e.g. after the records read since then were dropped
+        public void rewind(){
+            MappedJournal.this.rewind(this);
+        }
+
+        // records appended but not committed yet
+        public long pending(){
+            return MappedJournal.this.pending(this);
+        }
+
+        // append time (epoch millis) of the oldest record not committed yet
+        public OptionalLong oldestPending(){
+            return MappedJournal.this.oldestPending(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.bhuang.webflux.pattern.common.orchestration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/*
+runs the steps of a StepGraph against one context.
+ - every step starts as soon as all its prerequisites have succeeded, independent steps run in parallel
+ - each step runs at most once per run, a step whose prerequisite did not succeed is skipped
+ - a step fails when create(..) errors, completes empty or isSuccess() is false. it never fails the run itself,
+   the caller decides what to do with the steps that did succeed (see Result.succeeded())
+ - a step either changes the context it is given in place (the default) or, for an immutable context, returns a new one
+   with its result in it. those are then combined by merge(input, returned contexts): for a step with prerequisites
+   over what they returned, and for the run over what every step returned. either way the merge happens once,
+   on one thread, after all the steps it covers have completed, so no two steps ever write to the same object
+ - the critical path is the chain of steps the run waited for: the step that finished last,
+   the prerequisite it waited for last, and so on. its latency is the latency of the whole run.
+metrics (tagged engine):
+ - orchestration.step.duration{step, outcome}
+ - orchestration.critical.path{path, outcome} = critical path latency, path = step names joined by '>'
+   the step timers are built with the engine, a critical path timer the first time that path is seen
+ */
+public class OrchestrationEngine<C, S extends Step<C>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrchestrationEngine.class);
+
+    private final String name;
+    private final StepGraph<S> graph;
+    private final BiFunction<C, List<C>, C> merge;
+    private final MeterRegistry registry;
+    // step name -> outcome -> timer
+    private final Map<String, Map<Status, Timer>> stepTimers = new HashMap<>();
+    private final Map<CriticalPath, Timer> criticalPathTimers = new ConcurrentHashMap<>();
+
+    public OrchestrationEngine(String name, StepGraph<S> graph, MeterRegistry registry) {
+        this(name, graph, (ctx, returned) -> ctx, registry);
+    }
+
+    public OrchestrationEngine(String name, StepGraph<S> graph, BiFunction<C, List<C>, C> merge, MeterRegistry registry) {
+        this.name = name;
+        this.graph = graph;
+        this.merge = merge;
+        this.registry = registry;
+        for (var step : graph.topologicalOrder()) {
+            var timers = new EnumMap<Status, Timer>(Status.class);
+            for (var status : Status.values())
+                timers.put(status, Timer.builder("orchestration.step.duration")
+                                        .tag("engine", name)
+                                        .tag("step", step.name())
+                                        .tag("outcome", status.name())
+                                        .register(registry));
+            this.stepTimers.put(step.name(), timers);
+        }
+    }
+
+    public StepGraph<S> graph(){
+        return this.graph;
+    }
+
+    public Mono<Result<C, S>> run(C ctx){
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            // built in topological order, so the prerequisites of a step are always in the map already
+            var outcomes = new HashMap<S, Mono<Outcome<C, S>>>();
+            for (var step : this.graph.topologicalOrder()) {
+                var prerequisites = this.graph.prerequisites(step).stream().map(outcomes::get).toList();
+                var outcome = Flux.merge(prerequisites)
+                                  .collectList()
+                                  .flatMap(done -> this.runStep(step, ctx, start, done))
+                                  .cache();
+                outcomes.put(step, outcome);
+            }
+            return Flux.merge(outcomes.values())
+                       .collectList()
+                       .map(done -> this.toResult(ctx, start, done));
+        });
+    }
+
+    private Mono<Outcome<C, S>> runStep(S step, C ctx, long start, List<Outcome<C, S>> prerequisites){
+        // the prerequisite this step waited for last, the run start when it has none
+        var waitedFor = prerequisites.stream().max(Comparator.comparingLong(Outcome::end)).orElse(null);
+        var ready = Objects.isNull(waitedFor) ? start : waitedFor.end();
+        if(!prerequisites.stream().allMatch(Outcome::succeeded))
+            return Mono.just(new Outcome<>(step, Status.SKIPPED, null, ready, ready, waitedFor));
+        var input = prerequisites.isEmpty() ? ctx : this.merge.apply(ctx, this.returned(prerequisites));
+        return Mono.defer(() -> step.create(input))
+                   .map(Optional::of)
+                   .defaultIfEmpty(Optional.empty())
+                   .onErrorResume(ex -> {
+                       logger.debug("step {} failed", step.name(), ex);
+                       return Mono.just(Optional.empty());
+                   })
+                   .map(returned -> {
+                       var success = returned.filter(step.isSuccess()).isPresent();
+                       var status = success ? Status.SUCCEEDED : Status.FAILED;
+                       var outcome = new Outcome<>(step, status, returned.orElse(null), ready, System.nanoTime(), waitedFor);
+                       this.stepTimers.get(step.name())
+                                      .get(outcome.status())
+                                      .record(outcome.end() - outcome.begin(), TimeUnit.NANOSECONDS);
+                       return outcome;
+                   });
+    }
+
+    private List<C> returned(List<Outcome<C, S>> outcomes){
+        return outcomes.stream().map(Outcome::ctx).filter(Objects::nonNull).toList();
+    }
+
+    private Result<C, S> toResult(C ctx, long start, List<Outcome<C, S>> outcomes){
+        var criticalPath = new ArrayList<S>();
+        var last = outcomes.stream()
+                           .filter(o -> !Status.SKIPPED.equals(o.status()))
+                           .max(Comparator.comparingLong(Outcome::end))
+                           .orElse(null);
+        var latency = Duration.ofNanos(Objects.isNull(last) ? 0 : last.end() - start);
+        for (var outcome = last; Objects.nonNull(outcome); outcome = outcome.waitedFor())
+            criticalPath.add(outcome.step());
+        Collections.reverse(criticalPath);
+        var succeeded = outcomes.stream().filter(Outcome::succeeded).map(Outcome::step).collect(Collectors.toUnmodifiableSet());
+        var merged = this.merge.apply(ctx, this.returned(outcomes));
+        var result = new Result<>(merged, succeeded.size() == outcomes.size(), succeeded, List.copyOf(criticalPath), latency);
+        var path = criticalPath.stream().map(Step::name).collect(Collectors.joining(">"));
+        this.criticalPathTimers.computeIfAbsent(new CriticalPath(path, result.success()), this::criticalPathTimer)
+                               .record(latency);
+        logger.debug("{} run finished in {} ms, success: {}, critical path: {}", this.name, latency.toMillis(), result.success(), path);
+        return result;
+    }
+
+    private Timer criticalPathTimer(CriticalPath criticalPath){
+        return Timer.builder("orchestration.critical.path")
+                    .tag("engine", this.name)
+                    .tag("path", criticalPath.path())
+                    .tag("outcome", criticalPath.success() ? "success" : "failure")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(this.registry);
+    }
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        SKIPPED
+    }
+
+    // ctx = what the step returned, null when it did not run or failed without returning one
+    // begin = when the step was ready to run, end = when it finished
+    private record Outcome<C, S>(S step, Status status, C ctx, long begin, long end, Outcome<C, S> waitedFor) {
+
+        private boolean succeeded(){
+            return Status.SUCCEEDED.equals(this.status);
+        }
+
+    }
+
+    private record CriticalPath(String path, boolean success) {
+    }
+
+    // ctx = the merged context, success = every step succeeded
+    public record Result<C, S>(C ctx, boolean success, Set<S> succeeded, List<S> criticalPath, Duration latency) {
+    }
+
+}
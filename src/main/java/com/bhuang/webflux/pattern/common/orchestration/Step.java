@@ -0,0 +1,27 @@
+package com.bhuang.webflux.pattern.common.orchestration;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+/*
+one step of an orchestration, run by OrchestrationEngine once all its prerequisites have succeeded.
+ */
+public interface Step<C> {
+
+    // the context with this step's result in it: the one it was given, changed in place, or a new one (see OrchestrationEngine)
+    Mono<C> create(C ctx);
+
+    Predicate<C> isSuccess();
+
+    // the steps (by type) that must have succeeded before this one starts, none = starts right away
+    default Set<Class<?>> prerequisites(){
+        return Set.of();
+    }
+
+    default String name(){
+        return this.getClass().getSimpleName();
+    }
+
+}
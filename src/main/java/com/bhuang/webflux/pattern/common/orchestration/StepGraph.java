@@ -0,0 +1,78 @@
+package com.bhuang.webflux.pattern.common.orchestration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+the dependency graph of a set of steps, checked once when it is built:
+every prerequisite must be one of the steps and there must be no cycle.
+compensation runs in reverse topological order: a step is only compensated once all its dependents have been.
+ */
+public class StepGraph<S extends Step<?>> {
+
+    private final List<S> topologicalOrder;
+    private final Map<S, Set<S>> prerequisites = new HashMap<>();
+    private final Map<S, Set<S>> dependents = new HashMap<>();
+
+    public StepGraph(List<S> steps) {
+        var byType = steps.stream().collect(Collectors.toMap(Object::getClass, Function.identity()));
+        for (var step : steps) {
+            var required = new LinkedHashSet<S>();
+            for (var type : step.prerequisites()) {
+                var prerequisite = byType.get(type);
+                if(Objects.isNull(prerequisite))
+                    throw new IllegalStateException(step.name() + " requires " + type.getSimpleName() + " which is not a step");
+                required.add(prerequisite);
+                this.dependents.computeIfAbsent(prerequisite, k -> new LinkedHashSet<>()).add(step);
+            }
+            this.prerequisites.put(step, required);
+        }
+        this.topologicalOrder = this.sort(steps);
+    }
+
+    // every step comes after all of its prerequisites
+    public List<S> topologicalOrder(){
+        return this.topologicalOrder;
+    }
+
+    public Set<S> prerequisites(S step){
+        return this.prerequisites.getOrDefault(step, Set.of());
+    }
+
+    public Set<S> dependents(S step){
+        return this.dependents.getOrDefault(step, Set.of());
+    }
+
+    // Kahn's algorithm
+    private List<S> sort(List<S> steps){
+        var remaining = new HashMap<S, Integer>();
+        var ready = new ArrayDeque<S>();
+        for (var step : steps) {
+            remaining.put(step, this.prerequisites(step).size());
+            if(this.prerequisites(step).isEmpty())
+                ready.add(step);
+        }
+        var order = new ArrayList<S>();
+        while (!ready.isEmpty()) {
+            var step = ready.poll();
+            order.add(step);
+            for (var dependent : this.dependents(step))
+                if(remaining.merge(dependent, -1, Integer::sum) == 0)
+                    ready.add(dependent);
+        }
+        if(order.size() != steps.size())
+            throw new IllegalStateException("steps have a dependency cycle: " +
+                    steps.stream().filter(s -> !order.contains(s)).map(Step::name).toList());
+        return Collections.unmodifiableList(order);
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.bhuang.webflux.pattern.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+bounded lock-free queue on a ring of slots (D. Vyukov's bounded MPMC queue).
+every slot has a sequence number telling whether it is free for the producer of that lap or filled for its consumer,
+so offer / poll only need one CAS on their own counter and never wait for each other.
+offer returns false when the ring is full, it never blocks.
+ */
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    // capacity is rounded up to a power of two
+    public RingBuffer(int capacity) {
+        var size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++)
+            this.sequences.set(i, i);
+    }
+
+    public boolean offer(T element){
+        while (true) {
+            var position = this.producerPosition.get();
+            var index = (int) (position & this.mask);
+            var gap = this.sequences.get(index) - position;
+            if(gap < 0)
+                return false;
+            if(gap == 0 && this.producerPosition.compareAndSet(position, position + 1)){
+                this.slots.lazySet(index, element);
+                this.sequences.set(index, position + 1);
+                return true;
+            }
+        }
+    }
+
+    // null when empty
+    public T poll(){
+        while (true) {
+            var position = this.consumerPosition.get();
+            var index = (int) (position & this.mask);
+            var gap = this.sequences.get(index) - (position + 1);
+            if(gap < 0)
+                return null;
+            if(gap == 0 && this.consumerPosition.compareAndSet(position, position + 1)){
+                var element = this.slots.get(index);
+                this.slots.lazySet(index, null);
+                this.sequences.set(index, position + this.mask + 1);
+                return element;
+            }
+        }
+    }
+
+    public int size(){
+        return (int) Math.max(0, this.producerPosition.get() - this.consumerPosition.get());
+    }
+
+    public int capacity(){
+        return this.mask + 1;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.bhuang.webflux.pattern.common.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+keeps the last N latency samples in a ring and answers "what is the p-th percentile of them".
+the sorted snapshot is only rebuilt every recomputeEvery samples, so reading it on the request path is cheap.
+ */
+public class RollingPercentile {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+    private final int minSamples;
+    private final int recomputeEvery;
+    private volatile Snapshot snapshot = new Snapshot(-1, new long[0]);
+
+    public RollingPercentile(int windowSize, int minSamples) {
+        this.samples = new AtomicLongArray(windowSize);
+        this.minSamples = minSamples;
+        this.recomputeEvery = Math.max(1, windowSize / 10);
+    }
+
+    public void record(Duration latency){
+        var index = this.count.getAndIncrement();
+        this.samples.set((int) (index % this.samples.length()), latency.toNanos());
+    }
+
+    public long count(){
+        return this.count.get();
+    }
+
+    // empty until minSamples have been recorded
+    public Optional<Duration> percentile(double percentile){
+        var recorded = this.count.get();
+        if(recorded < this.minSamples)
+            return Optional.empty();
+        var current = this.snapshot;
+        if(current.recordedAt < 0 || recorded - current.recordedAt >= this.recomputeEvery)
+            current = this.recompute(recorded);
+        var sorted = current.sorted;
+        var rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return Optional.of(Duration.ofNanos(sorted[Math.max(0, Math.min(rank, sorted.length - 1))]));
+    }
+
+    private Snapshot recompute(long recorded){
+        var size = (int) Math.min(recorded, this.samples.length());
+        var copy = new long[size];
+        for (int i = 0; i < size; i++)
+            copy[i] = this.samples.get(i);
+        Arrays.sort(copy);
+        var fresh = new Snapshot(recorded, copy);
+        this.snapshot = fresh;
+        return fresh;
+    }
+
+    private record Snapshot(long recordedAt, long[] sorted) {
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.bhuang.webflux.pattern.common.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+keeps the k smallest elements seen so far (according to the comparator).
+backed by a max-heap of size k: the root is the current worst of the best, so each offer is O(log k).
+not thread safe - use one instance per subscription.
+ */
+public class TopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> comparator;
+    private final PriorityQueue<T> heap;
+
+    public TopK(int k, Comparator<? super T> comparator) {
+        this.k = k;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(k, comparator.reversed());
+    }
+
+    // true when the element made it into the top k, i.e. the set has changed
+    public boolean offer(T element){
+        if(this.heap.size() < this.k)
+            return this.heap.add(element);
+        if(this.comparator.compare(element, this.heap.peek()) >= 0)
+            return false;
+        this.heap.poll();
+        return this.heap.add(element);
+    }
+
+    // best first
+    public List<T> snapshot(){
+        var list = new ArrayList<>(this.heap);
+        list.sort(this.comparator);
+        return list;
+    }
+
+}
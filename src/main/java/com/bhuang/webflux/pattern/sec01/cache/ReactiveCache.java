@@ -0,0 +1,132 @@
+package com.bhuang.webflux.pattern.sec01.cache;
+
+import com.bhuang.webflux.pattern.common.cache.CacheMetrics;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/*
+bounded async cache in front of a Mono loader, a Caffeine AsyncLoadingCache underneath.
+ - concurrent misses for the same key share one load
+ - every value gets its own time-to-live (expireAfter), a ttl <= 0 means "do not cache"
+ - once an entry is older than refreshAfterWrite, the next hit still returns the cached value
+   but triggers one background reload, so hot keys never pay the round-trip on the request path.
+   a reload that fails or comes back empty keeps the cached value until it expires,
+   it is logged and counted as cache.refreshes{result=failure}
+ - empty / error results are never cached
+ - when the cache grows over maximumSize, Caffeine evicts the entries least likely to be used again
+the load runs detached from the caller that started it (its deadline does not apply), cancelling one caller does not cancel it.
+ */
+public class ReactiveCache<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCache.class);
+
+    private final String name;
+    private final Function<K, Mono<V>> loader;
+    private final AsyncLoadingCache<K, V> cache;
+    private final Counter refreshFailureCounter;
+
+    public ReactiveCache(String name,
+                         int maximumSize,
+                         Function<V, Duration> expireAfter,
+                         Duration refreshAfterWrite,
+                         Function<K, Mono<V>> loader,
+                         MeterRegistry registry) {
+        this.name = name;
+        this.loader = loader;
+        this.refreshFailureCounter = Counter.builder("cache.refreshes").tag("cache", name).tag("result", "failure")
+                                            .description("background reloads that failed, the cached value is kept")
+                                            .register(registry);
+        var metrics = new CacheMetrics(name, registry);
+        var builder = Caffeine.newBuilder()
+                              .maximumSize(maximumSize)
+                              .expireAfter(new ValueExpiry<K, V>(expireAfter))
+                              // maintenance is a few map operations, it runs on the thread that triggered it
+                              .executor(Runnable::run)
+                              .recordStats(() -> metrics);
+        if(Objects.nonNull(refreshAfterWrite) && !refreshAfterWrite.isZero() && !refreshAfterWrite.isNegative())
+            builder.refreshAfterWrite(refreshAfterWrite);
+        this.cache = builder.buildAsync(new Loader());
+        metrics.size(this.cache.synchronous());
+    }
+
+    public Mono<V> get(K key){
+        return Mono.defer(() -> Mono.fromFuture(this.cache.get(key), true));
+    }
+
+    public void invalidate(K key){
+        this.cache.synchronous().invalidate(key);
+    }
+
+    /*
+    toFuture subscribes with an empty Context, so the load never sees a caller's deadline.
+    an empty Mono completes the future with null, which Caffeine does not keep.
+     */
+    private CompletableFuture<V> load(K key){
+        return this.loader.apply(key).toFuture();
+    }
+
+    /*
+    Caffeine keeps the old value when a reload fails and would log the failure itself,
+    it does not for a CancellationException: the failure is logged here, with the cache and key.
+     */
+    private CompletableFuture<V> reload(K key){
+        return this.loader.apply(key)
+                          .switchIfEmpty(Mono.error(() -> new NoSuchElementException("reload returned nothing")))
+                          .onErrorMap(ex -> {
+                              this.refreshFailureCounter.increment();
+                              logger.warn("refreshing {} in cache {} failed, the cached value is kept until it expires", key, this.name, ex);
+                              return new CancellationException(ex.getMessage());
+                          })
+                          .toFuture();
+    }
+
+    private class Loader implements AsyncCacheLoader<K, V> {
+
+        @Override
+        public CompletableFuture<? extends V> asyncLoad(K key, Executor executor) {
+            return ReactiveCache.this.load(key);
+        }
+
+        @Override
+        public CompletableFuture<? extends V> asyncReload(K key, V oldValue, Executor executor) {
+            return ReactiveCache.this.reload(key);
+        }
+
+    }
+
+    // called again when a load completes and when a reload replaces the value, a read keeps the current expiry
+    private record ValueExpiry<K, V>(Function<V, Duration> expireAfter) implements Expiry<K, V> {
+
+        @Override
+        public long expireAfterCreate(K key, V value, long currentTime) {
+            return Math.max(0, this.expireAfter.apply(value).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+            return this.expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+    }
+
+}
@@ -1,29 +1,61 @@
 package com.bhuang.webflux.pattern.sec01.client;
 
 
+import com.bhuang.webflux.pattern.common.client.Hedger;
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.sec01.cache.ReactiveCache;
 import com.bhuang.webflux.pattern.sec01.dto.ProductResponse;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 @Service
 public class ProductClient {
 
     private final WebClient client;
+    private final ReactiveCache<Integer, ProductResponse> cache;
+    private final Hedger hedger;
 
-    public ProductClient(@Value("${sec01.product.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ProductClient(@Value("${sec01.product.service}") String baseUrl,
+                         @Value("${sec01.product.cache.maximum-size}") int maximumSize,
+                         @Value("${sec01.product.cache.expire-after-write}") Duration expireAfterWrite,
+                         @Value("${sec01.product.cache.refresh-after-write}") Duration refreshAfterWrite,
+                         @Value("${sec01.product.hedge.enabled}") boolean hedgeEnabled,
+                         @Value("${sec01.product.hedge.delay}") Duration hedgeDelay,
+                         @Value("${sec01.product.hedge.percentile}") double hedgePercentile,
+                         @Value("${sec01.product.hedge.budget-percent}") double hedgeBudgetPercent,
+                         WebClientFactory webClientFactory,
+                         MeterRegistry registry){
+        this.client = webClientFactory.create("sec01-product", baseUrl);
+        this.hedger = new Hedger("sec01.product", hedgeEnabled, hedgeDelay, hedgePercentile, hedgeBudgetPercent, registry);
+        this.cache = new ReactiveCache<>(
+                "sec01.product",
+                maximumSize,
+                product -> expireAfterWrite,
+                refreshAfterWrite,
+                this::fetchProduct,
+                registry
+        );
     }
 
+    /*
+    product category / description almost never change, so they are served from the cache
+    and refreshed in the background once they are older than refresh-after-write
+     */
     public Mono<ProductResponse> getProduct(Integer id){
-        return this.client
-                .get()
-                .uri("{id}", id)
-                .retrieve()
-                .bodyToMono(ProductResponse.class)
+        return this.cache.get(id);
+    }
+
+    private Mono<ProductResponse> fetchProduct(Integer id){
+        return this.hedger.hedge(() -> this.client
+                        .get()
+                        .uri("{id}", id)
+                        .retrieve()
+                        .bodyToMono(ProductResponse.class))
                 .onErrorResume(ex -> Mono.empty());
     }
 
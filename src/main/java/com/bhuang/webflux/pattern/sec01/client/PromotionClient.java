@@ -1,32 +1,78 @@
 package com.bhuang.webflux.pattern.sec01.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.sec01.cache.ReactiveCache;
 import com.bhuang.webflux.pattern.sec01.dto.PromotionResponse;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Objects;
 
 @Service
 public class PromotionClient {
 
-    private final PromotionResponse noPromotion = PromotionResponse.create(-1, "no promotion", 0.0, LocalDate.now());
+    private static final int NO_PROMOTION_ID = -1;
     private final WebClient client;
+    private final ReactiveCache<Integer, PromotionResponse> cache;
+    private final Duration maximumTtl;
+    private final Duration noPromotionTtl;
 
-    public PromotionClient(@Value("${sec01.promotion.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public PromotionClient(@Value("${sec01.promotion.service}") String baseUrl,
+                           @Value("${sec01.promotion.cache.maximum-size}") int maximumSize,
+                           @Value("${sec01.promotion.cache.maximum-ttl}") Duration maximumTtl,
+                           @Value("${sec01.promotion.cache.no-promotion-ttl}") Duration noPromotionTtl,
+                           WebClientFactory webClientFactory,
+                           MeterRegistry registry){
+        this.client = webClientFactory.create("sec01-promotion", baseUrl);
+        this.maximumTtl = maximumTtl;
+        this.noPromotionTtl = noPromotionTtl;
+        this.cache = new ReactiveCache<>(
+                "sec01.promotion",
+                maximumSize,
+                this::expireAfter,
+                null,
+                this::fetchPromotion,
+                registry
+        );
     }
 
     public Mono<PromotionResponse> getPromotion(Integer id){
+        return this.cache.get(id);
+    }
+
+    private Mono<PromotionResponse> fetchPromotion(Integer id){
         return this.client
                 .get()
                 .uri("{id}", id)
                 .retrieve()
                 .bodyToMono(PromotionResponse.class)
-                .onErrorReturn(noPromotion);
+                .onErrorResume(ex -> Mono.fromSupplier(this::noPromotion));
+    }
+
+    /*
+    a promotion stays valid until the end of its endDate (capped by maximum-ttl).
+    the "no promotion" fallback is a negative entry, kept only briefly so failing ids do not hammer the promotion service.
+     */
+    private Duration expireAfter(PromotionResponse promotion){
+        if(Objects.equals(NO_PROMOTION_ID, promotion.getId()))
+            return this.noPromotionTtl;
+        if(Objects.isNull(promotion.getEndDate()))
+            return this.maximumTtl;
+        var validUntil = promotion.getEndDate().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        var ttl = Duration.between(Instant.now(), validUntil);
+        return ttl.compareTo(this.maximumTtl) > 0 ? this.maximumTtl : ttl;
+    }
+
+    // built per call, so the endDate of the fallback moves forward with the calendar
+    private PromotionResponse noPromotion(){
+        return PromotionResponse.create(NO_PROMOTION_ID, "no promotion", 0.0, LocalDate.now());
     }
 
 }
@@ -1,9 +1,11 @@
 package com.bhuang.webflux.pattern.sec01.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec01.dto.Review;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Collections;
@@ -14,10 +16,8 @@ public class ReviewClient {
 
     private final WebClient client;
 
-    public ReviewClient(@Value("${sec01.review.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ReviewClient(@Value("${sec01.review.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec01-review", baseUrl);
     }
 
     public Mono<List<Review>> getReviews(Integer id){
@@ -30,4 +30,14 @@ public class ReviewClient {
                 .onErrorReturn(Collections.emptyList());
     }
 
+    // emits every review as soon as it is decoded, instead of waiting for the whole list
+    public Flux<Review> streamReviews(Integer id){
+        return this.client
+                .get()
+                .uri("{id}", id)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .onErrorResume(ex -> Mono.empty());
+    }
+
 }
@@ -1,15 +1,28 @@
 package com.bhuang.webflux.pattern.sec01.controller;
 
 import com.bhuang.webflux.pattern.sec01.dto.ProductAggregate;
+import com.bhuang.webflux.pattern.sec01.dto.ProductField;
 import com.bhuang.webflux.pattern.sec01.service.ProductAggregatorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 @RestController
 @RequestMapping("sec01")
 public class ProductAggregateController {
@@ -18,10 +31,48 @@ public class ProductAggregateController {
     private ProductAggregatorService service;
 
     @GetMapping("product/{id}")
-    public Mono<ResponseEntity<ProductAggregate>> getProductAggregate(@PathVariable Integer id){
-        return this.service.aggregate(id)
+    public Mono<ResponseEntity<ProductAggregate>> getProductAggregate(@PathVariable Integer id,
+                                                                      @RequestParam(required = false) List<String> fields){
+        return this.service.aggregate(id, this.parseFields(fields))
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    /*
+    progressive aggregate:
+     event "product" (product + price) is sent as soon as product & promotion are back,
+     then one event "review" per review while the review service is still streaming.
+    reviews are requested in parallel and buffered until the product event has been sent.
+     */
+    @GetMapping(value = "product/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamProductAggregate(@PathVariable Integer id){
+        var product = this.service.aggregate(id, EnumSet.of(ProductField.PRICE))
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)))
+                .map(p -> this.toEvent("product", p));
+        var reviews = this.service.streamReviews(id)
+                .map(r -> this.toEvent("review", r));
+        return Flux.mergeSequential(product, reviews);
+    }
+
+    // body: [1, 2, 3, ...]  response: one ProductAggregate per line, unknown ids are skipped
+    @PostMapping(value = "products", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductAggregate> getProductAggregates(@RequestBody Flux<Integer> ids,
+                                                       @RequestParam(defaultValue = "false") boolean ordered){
+        return this.service.aggregateAll(ids, ordered);
+    }
+
+    private Set<ProductField> parseFields(List<String> fields){
+        try {
+            return ProductField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private ServerSentEvent<Object> toEvent(String name, Object data){
+        return ServerSentEvent.builder(data)
+                              .event(name)
+                              .build();
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec01.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +12,7 @@ import java.util.List;
 @ToString
 @NoArgsConstructor
 @AllArgsConstructor(staticName = "create")
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ProductAggregate {
 
     private Integer id;
@@ -0,0 +1,36 @@
+package com.bhuang.webflux.pattern.sec01.dto;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+optional parts of a ProductAggregate. id / category / description are always returned.
+ */
+public enum ProductField {
+
+    PRICE,
+    REVIEWS;
+
+    public static Set<ProductField> all(){
+        return EnumSet.allOf(ProductField.class);
+    }
+
+    // fields=price,reviews ; missing or empty means every field, an unknown name throws IllegalArgumentException
+    public static Set<ProductField> parse(Collection<String> names){
+        if(Objects.isNull(names) || names.isEmpty())
+            return all();
+        var fields = EnumSet.noneOf(ProductField.class);
+        for(var name : names){
+            try {
+                fields.add(ProductField.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown field: " + name, e);
+            }
+        }
+        return fields;
+    }
+
+}
@@ -1,19 +1,32 @@
 package com.bhuang.webflux.pattern.sec01.service;
 
 
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
 import com.bhuang.webflux.pattern.sec01.client.ProductClient;
 import com.bhuang.webflux.pattern.sec01.client.PromotionClient;
 import com.bhuang.webflux.pattern.sec01.client.ReviewClient;
 import com.bhuang.webflux.pattern.sec01.dto.Price;
 import com.bhuang.webflux.pattern.sec01.dto.ProductAggregate;
+import com.bhuang.webflux.pattern.sec01.dto.ProductField;
 import com.bhuang.webflux.pattern.sec01.dto.ProductResponse;
 import com.bhuang.webflux.pattern.sec01.dto.PromotionResponse;
 import com.bhuang.webflux.pattern.sec01.dto.Review;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class ProductAggregatorService {
@@ -27,16 +40,111 @@ public class ProductAggregatorService {
     @Autowired
     private ReviewClient reviewClient;
 
+    @Value("${sec01.batch.concurrency}")
+    private int batchConcurrency;
+
+    /*
+    single-flight: all concurrent requests for the same id (and fields) share one upstream Mono.zip.
+    the entry is removed as soon as the shared call terminates, so nothing is cached beyond the in-flight window.
+     */
+    private final Map<AggregateKey, Mono<ProductAggregate>> inFlight = new ConcurrentHashMap<>();
+    private final Counter missCounter;
+    private final Counter joinCounter;
+
+    public ProductAggregatorService(MeterRegistry registry) {
+        this.missCounter = Counter.builder("sec01.aggregate.coalesce")
+                                  .tag("result", "miss")
+                                  .description("aggregate calls that started a new upstream fan-out")
+                                  .register(registry);
+        this.joinCounter = Counter.builder("sec01.aggregate.coalesce")
+                                  .tag("result", "join")
+                                  .description("aggregate calls that joined an in-flight fan-out")
+                                  .register(registry);
+        Gauge.builder("sec01.aggregate.inflight", this.inFlight, Map::size)
+             .description("product ids with an in-flight upstream fan-out")
+             .register(registry);
+    }
+
     public Mono<ProductAggregate> aggregate(Integer id){
+        return this.aggregate(id, ProductField.all());
+    }
+
+    /*
+    sparse fieldset: only the downstream calls needed for the requested fields are made.
+    e.g. PRICE never calls ReviewClient, REVIEWS never calls PromotionClient.
+     */
+    public Mono<ProductAggregate> aggregate(Integer id, Set<ProductField> fields){
+        var key = new AggregateKey(id, fields);
+        return Mono.defer(() -> {
+            var shared = this.inFlight.get(key);
+            if(shared != null){
+                this.joinCounter.increment();
+                return shared;
+            }
+            var created = new AtomicReference<Mono<ProductAggregate>>();
+            shared = this.inFlight.computeIfAbsent(key, k -> {
+                created.set(this.share(k));
+                return created.get();
+            });
+            if(shared == created.get())
+                this.missCounter.increment();
+            else
+                this.joinCounter.increment();
+            return shared;
+        });
+    }
+
+    public Flux<Review> streamReviews(Integer id){
+        return this.reviewClient.streamReviews(id);
+    }
+
+    /*
+    batch aggregate: repeated ids are fetched once, at most batchConcurrency aggregates run at the same time.
+    ordered = true keeps the request order, otherwise results are emitted as soon as they complete.
+     */
+    public Flux<ProductAggregate> aggregateAll(Flux<Integer> ids, boolean ordered){
+        var distinctIds = ids.distinct();
+        return ordered ?
+                distinctIds.flatMapSequential(this::aggregate, this.batchConcurrency) :
+                distinctIds.flatMap(this::aggregate, this.batchConcurrency);
+    }
+
+    private Mono<ProductAggregate> share(AggregateKey key){
+        var holder = new AtomicReference<Mono<ProductAggregate>>();
+        var shared = this.fetch(key.id(), key.fields())
+                         .doFinally(s -> this.inFlight.remove(key, holder.get()))
+                         .cache()
+                         .contextWrite(DeadlineUtil::detach);
+        holder.set(shared);
+        return shared;
+    }
+
+    private Mono<ProductAggregate> fetch(Integer id, Set<ProductField> fields){
+        var promotion = fields.contains(ProductField.PRICE) ?
+                this.promotionClient.getPromotion(id).map(Optional::of) :
+                Mono.just(Optional.<PromotionResponse>empty());
+        var reviews = fields.contains(ProductField.REVIEWS) ?
+                this.reviewClient.getReviews(id).map(Optional::of) :
+                Mono.just(Optional.<List<Review>>empty());
         return Mono.zip(
                this.productClient.getProduct(id),
-               this.promotionClient.getPromotion(id),
-               this.reviewClient.getReviews(id)
+               promotion,
+               reviews
         )
-        .map(t -> toDto(t.getT1(), t.getT2(), t.getT3()));
+        .map(t -> toDto(t.getT1(), t.getT2().orElse(null), t.getT3().orElse(null)));
     }
 
     private ProductAggregate toDto(ProductResponse product, PromotionResponse promotion, List<Review> reviews){
+        return ProductAggregate.create(
+                product.getId(),
+                product.getCategory(),
+                product.getDescription(),
+                Objects.isNull(promotion) ? null : toPrice(product, promotion),
+                reviews
+        );
+    }
+
+    private Price toPrice(ProductResponse product, PromotionResponse promotion){
         var price = new Price();
         var amountSaved = product.getPrice() * promotion.getDiscount() / 100;
         var discountedPrice = product.getPrice() - amountSaved;
@@ -45,13 +153,10 @@ public class ProductAggregatorService {
         price.setDiscountedPrice(discountedPrice);
         price.setDiscount(promotion.getDiscount());
         price.setEndDate(promotion.getEndDate());
-        return ProductAggregate.create(
-                product.getId(),
-                product.getCategory(),
-                product.getDescription(),
-                price,
-                reviews
-        );
+        return price;
+    }
+
+    private record AggregateKey(Integer id, Set<ProductField> fields) {
     }
 
 
@@ -0,0 +1,128 @@
+package com.bhuang.webflux.pattern.sec02.cache;
+
+import com.bhuang.webflux.pattern.common.cache.CacheMetrics;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/*
+shared scatter-gather results per key, a Caffeine cache underneath.
+ - the first subscriber starts the search, every concurrent subscriber attaches to the same Flux:
+   what has already arrived is replayed, then the live results follow
+ - a completed result set is kept for ttl, an errored one is dropped right away
+ - an in-flight search weighs nothing and never expires, late joiners can always attach to it.
+   only completed searches count against maximumSize
+the upstream search is never cancelled by its subscribers, so whatever it returns ends up in the cache.
+ */
+public class SearchCache<K, V> {
+
+    private final Cache<K, Entry<V>> entries;
+    private final Function<K, Flux<V>> loader;
+    private final ToDoubleFunction<K> loadCost;
+    private final CacheMetrics metrics;
+    private final Counter joinCounter;
+    private final Counter savedCounter;
+
+    /*
+    loadCost: number of downstream calls one load makes for that key,
+    added to cache.calls.saved every time a subscriber is served without a new load.
+     */
+    public SearchCache(String name,
+                       int maximumSize,
+                       Duration ttl,
+                       Function<K, Flux<V>> loader,
+                       ToDoubleFunction<K> loadCost,
+                       MeterRegistry registry) {
+        this.loader = loader;
+        this.loadCost = loadCost;
+        this.metrics = new CacheMetrics(name, registry);
+        this.joinCounter = this.metrics.gets("join");
+        this.savedCounter = Counter.builder("cache.calls.saved").tag("cache", name)
+                                   .description("downstream calls avoided by serving a shared or cached search")
+                                   .register(registry);
+        this.entries = Caffeine.newBuilder()
+                               .maximumWeight(maximumSize)
+                               .<K, Entry<V>>weigher((k, e) -> e.completed ? 1 : 0)
+                               .expireAfter(new CompletedExpiry<K, V>(ttl.toNanos()))
+                               // maintenance is a few map operations, it runs on the thread that triggered it
+                               .executor(Runnable::run)
+                               .recordStats(() -> this.metrics)
+                               .build();
+        this.metrics.size(this.entries);
+    }
+
+    // the map view does not record gets, a join is told apart from a hit here
+    public Flux<V> get(K key){
+        return Flux.defer(() -> {
+            var entry = this.entries.asMap().get(key);
+            if(Objects.isNull(entry)){
+                var created = this.loadingEntry(key);
+                entry = this.entries.asMap().putIfAbsent(key, created);
+                if(Objects.isNull(entry)){
+                    this.metrics.recordMisses(1);
+                    return created.results;
+                }
+            }
+            this.served(key, entry);
+            return entry.results;
+        });
+    }
+
+    private void served(K key, Entry<V> entry){
+        if(entry.completed)
+            this.metrics.recordHits(1);
+        else
+            this.joinCounter.increment();
+        this.savedCounter.increment(this.loadCost.applyAsDouble(key));
+    }
+
+    // replacing the entry with itself makes Caffeine weigh it again and start its ttl
+    private Entry<V> loadingEntry(K key){
+        var entry = new Entry<V>();
+        entry.results = this.loader.apply(key)
+                                   .doOnComplete(() -> {
+                                       entry.completed = true;
+                                       this.entries.asMap().replace(key, entry, entry);
+                                   })
+                                   .doOnError(ex -> this.entries.asMap().remove(key, entry))
+                                   .cache()
+                                   .contextWrite(DeadlineUtil::detach);
+        return entry;
+    }
+
+    private static class Entry<V> {
+
+        private Flux<V> results;
+        private volatile boolean completed;
+
+    }
+
+    private record CompletedExpiry<K, V>(long ttlNanos) implements Expiry<K, Entry<V>> {
+
+        @Override
+        public long expireAfterCreate(K key, Entry<V> entry, long currentTime) {
+            return entry.completed ? this.ttlNanos : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return this.expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+    }
+
+}
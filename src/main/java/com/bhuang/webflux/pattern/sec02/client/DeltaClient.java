@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec02.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -8,16 +9,20 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
-public class DeltaClient {
+public class DeltaClient implements FlightProvider {
 
     private final WebClient client;
 
-    public DeltaClient(@Value("${sec02.delta.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public DeltaClient(@Value("${sec02.delta.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec02-delta", baseUrl);
     }
 
+    @Override
+    public String name(){
+        return "delta";
+    }
+
+    @Override
     public Flux<FlightResult> getFlights(String from, String to){
         return this.client
                 .get()
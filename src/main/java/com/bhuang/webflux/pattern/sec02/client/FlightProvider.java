@@ -0,0 +1,22 @@
+package com.bhuang.webflux.pattern.sec02.client;
+
+import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
+import reactor.core.publisher.Flux;
+
+/*
+one airline integration. every @Service implementing it is picked up by FlightSearchService.
+the bulkhead (resilience4j.bulkhead.instances.<name>) and the cutoff (at most sec02.provider.<name>.timeout)
+are applied by the search service, implementations only call the airline and map its response.
+ */
+public interface FlightProvider {
+
+    String name();
+
+    Flux<FlightResult> getFlights(String from, String to);
+
+    // fill in what the airline does not send back, called once per result
+    default FlightResult normalize(FlightResult result, String from, String to){
+        return result;
+    }
+
+}
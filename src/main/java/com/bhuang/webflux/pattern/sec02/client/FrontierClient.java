@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec02.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,16 +12,20 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
-public class FrontierClient {
+public class FrontierClient implements FlightProvider {
 
     private final WebClient client;
 
-    public FrontierClient(@Value("${sec02.frontier.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public FrontierClient(@Value("${sec02.frontier.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec02-frontier", baseUrl);
     }
 
+    @Override
+    public String name(){
+        return "frontier";
+    }
+
+    @Override
     public Flux<FlightResult> getFlights(String from, String to){
         return this.client
                 .post()
@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec02.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -8,31 +9,37 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
-public class JetBlueClient {
+public class JetBlueClient implements FlightProvider {
 
     private static final String JETBLUE = "JETBLUE";
     private final WebClient client;
 
-    public JetBlueClient(@Value("${sec02.jetblue.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public JetBlueClient(@Value("${sec02.jetblue.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec02-jetblue", baseUrl);
     }
 
+    @Override
+    public String name(){
+        return "jetblue";
+    }
+
+    @Override
     public Flux<FlightResult> getFlights(String from, String to){
         return this.client
                 .get()
                 .uri("{from}/{to}", from, to)
                 .retrieve()
                 .bodyToFlux(FlightResult.class)
-                .doOnNext(fr -> this.normalizeResponse(fr, from, to))
                 .onErrorResume(ex -> Mono.empty());
     }
 
-    private void normalizeResponse(FlightResult result, String from, String to){
+    // jetblue does not send airline / from / to
+    @Override
+    public FlightResult normalize(FlightResult result, String from, String to){
         result.setFrom(from);
         result.setTo(to);
         result.setAirline(JETBLUE);
+        return result;
     }
 
 }
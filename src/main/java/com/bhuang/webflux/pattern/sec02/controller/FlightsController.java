@@ -1,25 +1,97 @@
 package com.bhuang.webflux.pattern.sec02.controller;
 
+import com.bhuang.webflux.pattern.sec02.dto.CompactFlight;
+import com.bhuang.webflux.pattern.sec02.dto.FlightFilter;
+import com.bhuang.webflux.pattern.sec02.dto.FlightPriceChange;
 import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
 import com.bhuang.webflux.pattern.sec02.service.FlightSearchService;
+import com.bhuang.webflux.pattern.sec02.service.FlightWatchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.List;
+
 @RestController
 @RequestMapping("sec02")
 public class FlightsController {
 
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+
     @Autowired
     private FlightSearchService service;
 
+    @Autowired
+    private FlightWatchService watchService;
+
+    // optional filters: ?maxPrice=300&airlines=delta,jetblue&date=2024-12-24
     @GetMapping(value = "flights/{from}/{to}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<FlightResult> getFlights(@PathVariable String from, @PathVariable String to){
-        return this.service.getFlights(from, to);
+    public Flux<FlightResult> getFlights(@PathVariable String from, @PathVariable String to, FlightFilter filter){
+        return this.service.getFlights(from, to, filter);
+    }
+
+    /*
+    batched mode, e.g. flights/ATL/LAS?batchSize=100&batchMillis=50
+    one event per frame of up to batchSize flights, sent when full or batchMillis after its first flight.
+    flights are encoded as arrays (see CompactFlight) to keep the frames small.
+     */
+    @GetMapping(value = "flights/{from}/{to}", params = {"batchSize", "!sort"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<List<CompactFlight>> getFlightBatches(@PathVariable String from,
+                                                      @PathVariable String to,
+                                                      @RequestParam int batchSize,
+                                                      @RequestParam(defaultValue = "50") long batchMillis,
+                                                      FlightFilter filter){
+        if(batchSize < 1 || batchSize > MAX_BATCH_SIZE)
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "batchSize must be between 1 and " + MAX_BATCH_SIZE));
+        if(batchMillis < 1)
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "batchMillis must be positive"));
+        return this.service.getFlights(from, to, filter)
+                           .map(CompactFlight::of)
+                           .bufferTimeout(batchSize, Duration.ofMillis(batchMillis));
+    }
+
+    /*
+    ranked mode, e.g. flights/ATL/LAS?sort=price&limit=5 (the same filters apply)
+     event "update"   : the current top-k (cheapest first), only sent when it changes
+     event "complete" : the final top-k, once every provider has finished or timed out
+     */
+    @GetMapping(value = "flights/{from}/{to}", params = "sort", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<List<FlightResult>>> getCheapestFlights(@PathVariable String from,
+                                                                        @PathVariable String to,
+                                                                        @RequestParam String sort,
+                                                                        @RequestParam(defaultValue = "10") int limit,
+                                                                        FlightFilter filter){
+        if(!"price".equalsIgnoreCase(sort))
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "unsupported sort: " + sort));
+        if(limit < 1 || limit > MAX_LIMIT)
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT));
+        var updates = this.service.getCheapestFlights(from, to, filter, limit).cache();
+        return Flux.concat(
+                updates.map(top -> this.toEvent("update", top)),
+                updates.last(List.of()).map(top -> this.toEvent("complete", top))
+        );
+    }
+
+    // stays open: the current prices first, then only what changed (ADDED / CHANGED / REMOVED)
+    @GetMapping(value = "flights/{from}/{to}/watch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<FlightPriceChange> watchFlights(@PathVariable String from, @PathVariable String to){
+        return this.watchService.watch(from, to);
+    }
+
+    private ServerSentEvent<List<FlightResult>> toEvent(String name, List<FlightResult> data){
+        return ServerSentEvent.builder(data)
+                              .event(name)
+                              .build();
     }
 
 }
@@ -0,0 +1,32 @@
+package com.bhuang.webflux.pattern.sec02.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.ToString;
+
+import java.time.LocalDate;
+
+/*
+FlightResult without the field names: ["DELTA","ATL","LAS",312.5,"2024-12-24"]
+used by the batched stream, where the names would be repeated for every flight of a frame.
+ */
+@Data
+@ToString
+@AllArgsConstructor(staticName = "create")
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"airline", "from", "to", "price", "date"})
+public class CompactFlight {
+
+    private String airline;
+    private String from;
+    private String to;
+    private Double price;
+    private LocalDate date;
+
+    public static CompactFlight of(FlightResult result){
+        return create(result.getAirline(), result.getFrom(), result.getTo(), result.getPrice(), result.getDate());
+    }
+
+}
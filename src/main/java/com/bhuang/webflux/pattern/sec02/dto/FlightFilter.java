@@ -0,0 +1,42 @@
+package com.bhuang.webflux.pattern.sec02.dto;
+
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+query parameters of a flight search, e.g. ?maxPrice=300&airlines=delta,jetblue&date=2024-12-24
+every criterion is optional, a missing one matches everything.
+ */
+@Data
+@ToString
+public class FlightFilter {
+
+    private Double maxPrice;
+    private Set<String> airlines;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate date;
+
+    // provider names in lower case, empty = every provider
+    public Set<String> airlineNames(){
+        if(Objects.isNull(this.airlines))
+            return Set.of();
+        return this.airlines.stream()
+                            .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                            .filter(name -> !name.isEmpty())
+                            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean matches(FlightResult result){
+        if(Objects.nonNull(this.maxPrice) && (Objects.isNull(result.getPrice()) || result.getPrice() > this.maxPrice))
+            return false;
+        return Objects.isNull(this.date) || this.date.equals(result.getDate());
+    }
+
+}
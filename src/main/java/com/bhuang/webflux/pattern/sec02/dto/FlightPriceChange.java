@@ -0,0 +1,22 @@
+package com.bhuang.webflux.pattern.sec02.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.ToString;
+
+@Data
+@ToString
+@AllArgsConstructor(staticName = "create")
+public class FlightPriceChange {
+
+    private Type type;
+    private FlightResult flight;
+    private Double previousPrice;
+
+    public enum Type {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.bhuang.webflux.pattern.sec02.service;
+
+import com.bhuang.webflux.pattern.common.util.RollingPercentile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+per provider cutoff derived from how long its searches usually take to complete.
+ - cutoff = the observed completion time percentile, never below minimum and never above maximum
+ - until enough searches have been seen, the cutoff is the maximum (the configured provider timeout)
+ - a search that gets cut off is recorded as twice the cutoff, so a provider that slows down
+   pushes its own cutoff up again instead of being cut at the old value forever
+ */
+public class AdaptiveCutoff {
+
+    private final RollingPercentile latencies = new RollingPercentile(1000, 20);
+    private final double percentile;
+    private final Duration minimum;
+    private final Duration maximum;
+    private final Counter cutoffCounter;
+
+    public AdaptiveCutoff(String provider, double percentile, Duration minimum, Duration maximum, MeterRegistry registry) {
+        this.percentile = percentile;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.cutoffCounter = Counter.builder("sec02.provider.cutoffs").tag("provider", provider)
+                                    .description("searches cut off before the provider completed")
+                                    .register(registry);
+        Gauge.builder("sec02.provider.cutoff", this, c -> c.cutoff().toMillis()).tag("provider", provider)
+             .description("current cutoff in milliseconds")
+             .register(registry);
+    }
+
+    public <T> Flux<T> apply(Flux<T> results){
+        return Flux.defer(() -> {
+            var start = System.nanoTime();
+            var cutoff = this.cutoff();
+            var cutOff = new AtomicBoolean();
+            var timer = Mono.delay(cutoff).doOnNext(tick -> cutOff.set(true));
+            return results.takeUntilOther(timer)
+                          .doOnComplete(() -> {
+                              if(cutOff.get()){
+                                  this.cutoffCounter.increment();
+                                  this.latencies.record(this.cap(cutoff.multipliedBy(2)));
+                              } else {
+                                  this.latencies.record(Duration.ofNanos(System.nanoTime() - start));
+                              }
+                          });
+        });
+    }
+
+    public Duration cutoff(){
+        return this.latencies.percentile(this.percentile)
+                             .map(this::cap)
+                             .orElse(this.maximum);
+    }
+
+    private Duration cap(Duration cutoff){
+        if(cutoff.compareTo(this.minimum) < 0)
+            return this.minimum;
+        return cutoff.compareTo(this.maximum) > 0 ? this.maximum : cutoff;
+    }
+
+}
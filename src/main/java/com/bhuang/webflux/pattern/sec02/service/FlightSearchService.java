@@ -1,34 +1,144 @@
 package com.bhuang.webflux.pattern.sec02.service;
 
-import com.bhuang.webflux.pattern.sec02.client.DeltaClient;
-import com.bhuang.webflux.pattern.sec02.client.FrontierClient;
-import com.bhuang.webflux.pattern.sec02.client.JetBlueClient;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
+import com.bhuang.webflux.pattern.common.util.TopK;
+import com.bhuang.webflux.pattern.sec02.cache.SearchCache;
+import com.bhuang.webflux.pattern.sec02.client.FlightProvider;
+import com.bhuang.webflux.pattern.sec02.dto.FlightFilter;
 import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 
 @Service
 public class FlightSearchService {
 
-    @Autowired
-    private DeltaClient deltaClient;
+    private static final Comparator<FlightResult> BY_PRICE = Comparator.comparing(FlightResult::getPrice,
+                                                                                  Comparator.nullsLast(Comparator.naturalOrder()));
+    private static final Duration SEARCH_TIMEOUT = Duration.ofSeconds(3);
 
-    @Autowired
-    private FrontierClient frontierClient;
+    /*
+    every FlightProvider runs behind its own bulkhead and adaptive cutoff:
+    a saturated provider is skipped (no results from it) instead of queueing, a slow one is cut off on its own.
+    the search completes as soon as every provider has completed or hit its cutoff.
+     */
+    private final List<GuardedProvider> providers;
+    private final int parallelism;
 
-    @Autowired
-    private JetBlueClient jetBlueClient;
+    /*
+    identical searches share one scatter-gather: concurrent callers attach to the in-flight one,
+    later callers get the completed results for a short ttl.
+     */
+    private final SearchCache<SearchKey, FlightResult> cache;
 
-    public Flux<FlightResult> getFlights(String from, String to){
-        return Flux.merge(
-                this.deltaClient.getFlights(from, to),
-                this.frontierClient.getFlights(from, to),
-                this.jetBlueClient.getFlights(from, to)
-        )
-        .take(Duration.ofSeconds(3));
+    public FlightSearchService(List<FlightProvider> providers,
+                               BulkheadRegistry bulkheadRegistry,
+                               Environment environment,
+                               @Value("${sec02.provider.timeout}") Duration defaultTimeout,
+                               @Value("${sec02.provider.parallelism}") int parallelism,
+                               @Value("${sec02.provider.cutoff.percentile}") double cutoffPercentile,
+                               @Value("${sec02.provider.cutoff.minimum}") Duration minimumCutoff,
+                               @Value("${sec02.search.cache.maximum-size}") int maximumSize,
+                               @Value("${sec02.search.cache.ttl}") Duration ttl,
+                               MeterRegistry registry) {
+        this.providers = providers.stream()
+                                  .map(p -> new GuardedProvider(
+                                          p,
+                                          bulkheadRegistry.bulkhead(p.name()),
+                                          new AdaptiveCutoff(
+                                                  p.name(),
+                                                  cutoffPercentile,
+                                                  minimumCutoff,
+                                                  environment.getProperty("sec02.provider." + p.name() + ".timeout", Duration.class, defaultTimeout),
+                                                  registry
+                                          )
+                                  ))
+                                  .toList();
+        this.parallelism = parallelism;
+        this.cache = new SearchCache<>("sec02.search", maximumSize, ttl, this::search, key -> this.select(key).size(), registry);
+    }
+
+    /*
+    filters are pushed down as far as they go:
+     airlines decides which providers are called at all (and is part of the cache key),
+     price / date drop results before they reach the encoder.
+    every caller still gets its own cutoff (3 seconds or its remaining deadline), the shared search is not affected.
+     */
+    public Flux<FlightResult> getFlights(String from, String to, FlightFilter filter){
+        var key = new SearchKey(from, to, this.validate(filter.airlineNames()));
+        return this.cache.get(key)
+                         .filter(filter::matches)
+                         .transform(DeadlineUtil.take(SEARCH_TIMEOUT));
+    }
+
+    // bypasses the cache, for callers that need fresh prices every time (e.g. the price watch poller)
+    public Flux<FlightResult> searchNow(String from, String to){
+        return this.search(new SearchKey(from, to, Set.of()));
+    }
+
+    /*
+    ranked mode: the current `limit` cheapest flights, best first.
+    a new list is emitted only when a result enters the top-k, results that do not beat the current ones are dropped here.
+     */
+    public Flux<List<FlightResult>> getCheapestFlights(String from, String to, FlightFilter filter, int limit){
+        return Flux.defer(() -> {
+            var topK = new TopK<FlightResult>(limit, BY_PRICE);
+            return this.getFlights(from, to, filter)
+                       .filter(topK::offer)
+                       .map(fr -> topK.snapshot());
+        });
+    }
+
+    private Set<String> validate(Set<String> airlines){
+        var known = this.providers.stream().map(p -> p.provider().name()).toList();
+        for(var airline : airlines)
+            if(!known.contains(airline))
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown airline: " + airline);
+        return airlines;
+    }
+
+    private List<GuardedProvider> select(SearchKey key){
+        if(key.airlines().isEmpty())
+            return this.providers;
+        return this.providers.stream()
+                             .filter(p -> key.airlines().contains(p.provider().name()))
+                             .toList();
+    }
+
+    private Flux<FlightResult> search(SearchKey key){
+        return Flux.fromIterable(this.select(key))
+                   .flatMap(p -> this.search(p, key), this.parallelism)
+                   .take(SEARCH_TIMEOUT);
+    }
+
+    private Flux<FlightResult> search(GuardedProvider guarded, SearchKey key){
+        var provider = guarded.provider();
+        return provider.getFlights(key.from(), key.to())
+                       .map(fr -> provider.normalize(fr, key.from(), key.to()))
+                       .transform(guarded.cutoff()::apply)
+                       .transformDeferred(BulkheadOperator.of(guarded.bulkhead()))
+                       .onErrorResume(BulkheadFullException.class, ex -> Mono.empty());
+    }
+
+    private record GuardedProvider(FlightProvider provider, Bulkhead bulkhead, AdaptiveCutoff cutoff) {
+    }
+
+    // the providers take no date, so the date filter is applied on the cached results instead of being part of the key
+    private record SearchKey(String from, String to, Set<String> airlines) {
     }
 
 }
@@ -0,0 +1,137 @@
+package com.bhuang.webflux.pattern.sec02.service;
+
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
+import com.bhuang.webflux.pattern.sec02.dto.FlightPriceChange;
+import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+price watch: one poll loop per route, whatever the number of watchers.
+ - the loop starts with the first watcher and is cancelled when the last one leaves
+ - every round is diffed against the previous one (a flight = airline + date), only the changes are pushed
+ - a watcher joining later first gets the current snapshot as ADDED, then the changes
+ - a round without any result is skipped, so a provider hiccup does not look like "every flight removed"
+ */
+@Service
+public class FlightWatchService {
+
+    @Autowired
+    private FlightSearchService searchService;
+
+    private final Map<Route, Flux<Round>> pollers = new ConcurrentHashMap<>();
+    private final Duration interval;
+
+    public FlightWatchService(@Value("${sec02.watch.interval}") Duration interval, MeterRegistry registry) {
+        this.interval = interval;
+        Gauge.builder("sec02.watch.routes", this.pollers, Map::size)
+             .description("routes with an active poll loop")
+             .register(registry);
+    }
+
+    public Flux<FlightPriceChange> watch(String from, String to){
+        return this.pollers.computeIfAbsent(new Route(from, to), this::poll)
+                           .index()
+                           .concatMapIterable(t -> t.getT1() == 0 ? t.getT2().snapshot() : t.getT2().changes());
+    }
+
+    /*
+    refCount reconnects the same shared flux when a watcher comes in right after the last one left, before the
+    finished loop got to remove it. every connection therefore re-registers the flux and takes a number, both under
+    the map's lock for the route, and a finished loop only removes the entry when no newer connection was made.
+     */
+    private Flux<Round> poll(Route route){
+        var holder = new AtomicReference<Flux<Round>>();
+        var connections = new AtomicLong();
+        var shared = Flux.defer(() -> {
+                             var connection = new AtomicLong();
+                             this.pollers.compute(route, (r, current) -> {
+                                 connection.set(connections.incrementAndGet());
+                                 return Objects.isNull(current) ? holder.get() : current;
+                             });
+                             return this.loop(route)
+                                        .doFinally(s -> this.pollers.computeIfPresent(route, (r, current) ->
+                                                current == holder.get() && connections.get() == connection.get() ? null : current));
+                         })
+                         .contextWrite(DeadlineUtil::detach)
+                         .replay(1)
+                         .refCount();
+        holder.set(shared);
+        return shared;
+    }
+
+    private Flux<Round> loop(Route route){
+        return Flux.interval(Duration.ZERO, this.interval)
+                   .onBackpressureDrop()
+                   .concatMap(tick -> this.searchService.searchNow(route.from(), route.to()).collectList())
+                   .filter(results -> !results.isEmpty())
+                   .map(this::toFlights)
+                   .scan(Round.EMPTY, Round::next)
+                   .skip(1)
+                   .filter(round -> !round.changes().isEmpty());
+    }
+
+    // the cheapest one wins when an airline returns several flights on the same day
+    private Map<FlightKey, FlightResult> toFlights(List<FlightResult> results){
+        var flights = new HashMap<FlightKey, FlightResult>();
+        for(var result : results)
+            flights.merge(new FlightKey(result.getAirline(), result.getDate()), result,
+                          (a, b) -> cheaper(b, a) ? b : a);
+        return flights;
+    }
+
+    private static boolean cheaper(FlightResult a, FlightResult b){
+        return Objects.nonNull(a.getPrice()) && (Objects.isNull(b.getPrice()) || a.getPrice() < b.getPrice());
+    }
+
+    private record Route(String from, String to) {
+    }
+
+    private record FlightKey(String airline, LocalDate date) {
+    }
+
+    private record Round(Map<FlightKey, FlightResult> flights, List<FlightPriceChange> changes) {
+
+        private static final Round EMPTY = new Round(Map.of(), List.of());
+
+        private Round next(Map<FlightKey, FlightResult> current){
+            var changes = new ArrayList<FlightPriceChange>();
+            current.forEach((key, flight) -> {
+                var previous = this.flights.get(key);
+                if(Objects.isNull(previous))
+                    changes.add(FlightPriceChange.create(FlightPriceChange.Type.ADDED, flight, null));
+                else if(!Objects.equals(previous.getPrice(), flight.getPrice()))
+                    changes.add(FlightPriceChange.create(FlightPriceChange.Type.CHANGED, flight, previous.getPrice()));
+            });
+            this.flights.forEach((key, flight) -> {
+                if(!current.containsKey(key))
+                    changes.add(FlightPriceChange.create(FlightPriceChange.Type.REMOVED, flight, flight.getPrice()));
+            });
+            return new Round(current, changes);
+        }
+
+        private List<FlightPriceChange> snapshot(){
+            return this.flights.values()
+                               .stream()
+                               .map(flight -> FlightPriceChange.create(FlightPriceChange.Type.ADDED, flight, null))
+                               .toList();
+        }
+
+    }
+
+}
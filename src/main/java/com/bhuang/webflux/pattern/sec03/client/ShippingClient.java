@@ -1,6 +1,8 @@
 package com.bhuang.webflux.pattern.sec03.client;
 
 
+import com.bhuang.webflux.pattern.common.client.BulkCall;
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec03.dto.ShippingRequest;
 import com.bhuang.webflux.pattern.sec03.dto.ShippingResponse;
 import com.bhuang.webflux.pattern.sec03.dto.Status;
@@ -9,17 +11,23 @@ import org.springframework.stereotype.Repository;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Repository
 public class ShippingClient {
 
     private static final String SCHEDULE = "schedule";
     private static final String CANCEL = "cancel";
+    private static final String CANCEL_BULK = "cancel/bulk";
     private final WebClient client;
+    private final BulkCall<ShippingRequest> cancelBulk;
 
-    public ShippingClient(@Value("${sec03.shipping.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ShippingClient(@Value("${sec03.shipping.service}") String baseUrl,
+                          @Value("${sec03.shipping.bulk-compensation}") boolean bulk,
+                          WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec03-shipping", baseUrl);
+        this.cancelBulk = new BulkCall<>(this.client, CANCEL_BULK, bulk,
+                                         request -> this.cancel(request).map(r -> Status.SUCCESS.equals(r.getStatus())), ShippingRequest::getOrderId);
     }
 
     public Mono<ShippingResponse> schedule(ShippingRequest request){
@@ -30,6 +38,11 @@ public class ShippingClient {
         return this.callShippingService(CANCEL, request);
     }
 
+    // one call for a whole batch of compensations
+    public Mono<Void> cancel(List<ShippingRequest> requests){
+        return this.cancelBulk.call(requests);
+    }
+
     private Mono<ShippingResponse> callShippingService(String endPoint, ShippingRequest request){
         return this.client
                 .post()
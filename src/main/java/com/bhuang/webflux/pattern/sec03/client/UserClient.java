@@ -1,5 +1,7 @@
 package com.bhuang.webflux.pattern.sec03.client;
 
+import com.bhuang.webflux.pattern.common.client.BulkCall;
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec03.dto.PaymentRequest;
 import com.bhuang.webflux.pattern.sec03.dto.PaymentResponse;
 import com.bhuang.webflux.pattern.sec03.dto.Status;
@@ -8,17 +10,23 @@ import org.springframework.stereotype.Repository;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Repository
 public class UserClient {
 
     private static final String DEDUCT = "deduct";
     private static final String REFUND = "refund";
+    private static final String REFUND_BULK = "refund/bulk";
     private final WebClient client;
+    private final BulkCall<PaymentRequest> refundBulk;
 
-    public UserClient(@Value("${sec03.user.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public UserClient(@Value("${sec03.user.service}") String baseUrl,
+                      @Value("${sec03.user.bulk-compensation}") boolean bulk,
+                      WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec03-user", baseUrl);
+        this.refundBulk = new BulkCall<>(this.client, REFUND_BULK, bulk,
+                                         request -> this.refund(request).map(r -> Status.SUCCESS.equals(r.getStatus())), PaymentRequest::getOrderId);
     }
 
     public Mono<PaymentResponse> deduct(PaymentRequest request){
@@ -29,6 +37,11 @@ public class UserClient {
         return this.callUserService(REFUND, request);
     }
 
+    // one call for a whole batch of compensations
+    public Mono<Void> refund(List<PaymentRequest> requests){
+        return this.refundBulk.call(requests);
+    }
+
     private Mono<PaymentResponse> callUserService(String endPoint, PaymentRequest request){
         return this.client
                 .post()
@@ -0,0 +1,17 @@
+package com.bhuang.webflux.pattern.sec03.config;
+
+import com.bhuang.webflux.pattern.common.compensation.CompensationProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CancellationConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "sec03.cancellation")
+    public CompensationProperties cancellationProperties(){
+        return new CompensationProperties();
+    }
+
+}
@@ -9,7 +9,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Predicate;
 
 @Service
@@ -29,9 +30,8 @@ public class InventoryOrchestrator extends Orchestrator {
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.inventoryClient
                 .deduct(ctx.getInventoryRequest()) // Mono<InventoryResponse>
-                // doOnNext 副作用：给ctx 设置值
-                .doOnNext(ctx::setInventoryResponse) // Mono<InventoryResponse>
-                .thenReturn(ctx);
+                // ctx 是不可变的：返回一个带有库存响应的新 ctx
+                .map(ctx::withInventoryResponse); // Mono<OrchestrationRequestContext>
     }
 
     @Override
@@ -39,7 +39,7 @@ public class InventoryOrchestrator extends Orchestrator {
         return orchestrationRequestContext ->
         {
             logger.info(" InventoryOrchestrator orchestrationRequestContext: {}", orchestrationRequestContext);
-            return Status.SUCCESS.equals(orchestrationRequestContext.getInventoryResponse().getStatus());
+            return Objects.nonNull(orchestrationRequestContext.getInventoryResponse()) && Status.SUCCESS.equals(orchestrationRequestContext.getInventoryResponse().getStatus());
         };
     }
 
@@ -47,11 +47,11 @@ public class InventoryOrchestrator extends Orchestrator {
     当用户 取消订单的时候， 需要恢复库存
      */
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return orchestrationRequestContext -> Mono.just(orchestrationRequestContext)
-                .filter(isSuccess())
-                .map(OrchestrationRequestContext::getInventoryRequest)
-                .flatMap(this.inventoryClient::restore)
-                .subscribe();
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getInventoryRequest)
+                           .toList();
+        return this.inventoryClient.restore(requests);
     }
 }
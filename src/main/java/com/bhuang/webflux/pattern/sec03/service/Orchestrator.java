@@ -1,15 +1,20 @@
 package com.bhuang.webflux.pattern.sec03.service;
 
+import com.bhuang.webflux.pattern.common.orchestration.Step;
 import com.bhuang.webflux.pattern.sec03.dto.OrchestrationRequestContext;
 import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.List;
 import java.util.function.Predicate;
 
-public abstract class Orchestrator {
+/*
+one step of the order saga, the steps run as a dependency graph (see Step.prerequisites())
+ */
+public abstract class Orchestrator implements Step<OrchestrationRequestContext> {
 
     public abstract Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx);
     public abstract Predicate<OrchestrationRequestContext> isSuccess();
-    public abstract Consumer<OrchestrationRequestContext> cancel();
+    // compensates a batch of failed orders, the ones this step did not succeed for are skipped
+    public abstract Mono<Void> cancel(List<OrchestrationRequestContext> ctxs);
 
 }
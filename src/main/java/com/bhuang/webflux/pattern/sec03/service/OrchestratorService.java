@@ -1,8 +1,8 @@
 package com.bhuang.webflux.pattern.sec03.service;
 
+import com.bhuang.webflux.pattern.common.audit.AuditSink;
 import com.bhuang.webflux.pattern.sec03.client.ProductClient;
 import com.bhuang.webflux.pattern.sec03.dto.*;
-import com.bhuang.webflux.pattern.sec03.util.DebugUtil;
 import com.bhuang.webflux.pattern.sec03.util.OrchestrationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -20,27 +20,30 @@ public class OrchestratorService {
     @Autowired
     private OrderCancellationService cancellationService;
 
+    @Autowired
+    private AuditSink auditSink;
+
     public Mono<OrderResponse> placeOrder(Mono<OrderRequest> mono){
         return mono
-                .map(OrchestrationRequestContext::new)
+                .map(OrchestrationRequestContext::create)
                 .flatMap(this::getProduct)
-                .doOnNext(OrchestrationUtil::buildRequestContext)
+                .map(OrchestrationUtil::buildRequestContext)
                 .flatMap(fulfillmentService::placeOrder)
-                .doOnNext(this::doOrderPostProcessing)
-                .doOnNext(DebugUtil::print) // just for debugging
+                .flatMap(this::doOrderPostProcessing)
+                .doOnNext(ctx -> this.auditSink.record("sec03.order", ctx))
                 .map(this::toOrderResponse);
     }
 
     private Mono<OrchestrationRequestContext> getProduct(OrchestrationRequestContext ctx){
         return this.productClient.getProduct(ctx.getOrderRequest().getProductId())
                 .map(Product::getPrice)
-                .doOnNext(ctx::setProductPrice)
-                .map(i -> ctx);
+                .map(ctx::withProductPrice);
     }
 
-    private void doOrderPostProcessing(OrchestrationRequestContext ctx){
+    private Mono<OrchestrationRequestContext> doOrderPostProcessing(OrchestrationRequestContext ctx){
         if(Status.FAILED.equals(ctx.getStatus()))
-            this.cancellationService.cancelOrder(ctx);
+            return this.cancellationService.cancelOrder(ctx).thenReturn(ctx);
+        return Mono.just(ctx);
     }
 
     private OrderResponse toOrderResponse(OrchestrationRequestContext ctx){
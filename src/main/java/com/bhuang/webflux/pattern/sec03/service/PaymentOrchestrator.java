@@ -8,7 +8,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Predicate;
 
 @Service
@@ -28,16 +29,14 @@ public class PaymentOrchestrator extends Orchestrator{
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.userClient
                 .deduct(ctx.getPaymentRequest()) // Mono<PaymentResponse>
-                .doOnNext(ctx::setPaymentResponse)
-                .thenReturn(ctx)
-                ;
+                .map(ctx::withPaymentResponse);
     }
 
     @Override
     public Predicate<OrchestrationRequestContext> isSuccess() {
         return orchestrationRequestContext -> {
             logger.info(" PaymentOrchestrator orchestrationRequestContext: {}", orchestrationRequestContext);
-            return Status.SUCCESS.equals(orchestrationRequestContext.getPaymentResponse().getStatus());
+            return Objects.nonNull(orchestrationRequestContext.getPaymentResponse()) && Status.SUCCESS.equals(orchestrationRequestContext.getPaymentResponse().getStatus());
         };
     }
 
@@ -45,11 +44,11 @@ public class PaymentOrchestrator extends Orchestrator{
     当用户取消订单的时候 需要退款
      */
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return orchestrationRequestContext -> Mono.just(orchestrationRequestContext)
-                .filter(isSuccess())
-                .map(OrchestrationRequestContext::getPaymentRequest)
-                .flatMap(this.userClient::deduct)
-                .subscribe();
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getPaymentRequest)
+                           .toList();
+        return this.userClient.refund(requests);
     }
 }
@@ -8,7 +8,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Predicate;
 
 @Service
@@ -24,9 +25,7 @@ public class ShippingOrchestrator extends Orchestrator{
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.shippingClient
                 .schedule(ctx.getShippingRequest())
-                .doOnNext(ctx::setShippingResponse)
-                .thenReturn(ctx)
-                ;
+                .map(ctx::withShippingResponse);
     }
 
     @Override
@@ -34,20 +33,17 @@ public class ShippingOrchestrator extends Orchestrator{
 
         return orchestrationRequestContext -> {
             logger.info(" ShippingOrchestrator orchestrationRequestContext: {}", orchestrationRequestContext);
-            return Status.SUCCESS.equals(orchestrationRequestContext.getShippingResponse().getStatus());
+            return Objects.nonNull(orchestrationRequestContext.getShippingResponse()) && Status.SUCCESS.equals(orchestrationRequestContext.getShippingResponse().getStatus());
         };
 
     }
 
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return orchestrationRequestContext -> Mono.just(orchestrationRequestContext)
-                .filter(isSuccess())
-                // flatMap(ctx -> this.shippingClient.cancel(ctx.getShippingRequest()))  <==>  .map(OrchestrationRequestContext::getShippingRequest) .flatMap(this.shippingClient::cancel)
-                //.flatMap(ctx -> this.shippingClient.cancel(ctx.getShippingRequest()))
-                .map(OrchestrationRequestContext::getShippingRequest)
-                .flatMap(this.shippingClient::cancel)
-                .subscribe()
-                ;
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getShippingRequest)
+                           .toList();
+        return this.shippingClient.cancel(requests);
     }
 }
@@ -1,18 +0,0 @@
-package com.bhuang.webflux.pattern.sec03.util;
-
-import com.bhuang.webflux.pattern.sec03.dto.OrchestrationRequestContext;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-public class DebugUtil {
-
-    public static void print(OrchestrationRequestContext ctx){
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(ctx));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
-    }
-
-}
@@ -0,0 +1,49 @@
+package com.bhuang.webflux.pattern.sec04.cache;
+
+import com.bhuang.webflux.pattern.common.cache.CacheMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.OptionalInt;
+
+/*
+short-lived memory of recent "no" answers, e.g. the balance of a user whose payment was declined,
+so an order that would be declined again can be rejected without calling the service.
+ - only what the service actually answered belongs here, never a timeout or a connection error
+ - an entry expires ttl after it was written, the next order after that goes to the service again
+ - bounded by maximumSize, a Caffeine cache underneath
+ */
+public class NegativeCache<K> {
+
+    private final Cache<K, Integer> entries;
+
+    public NegativeCache(String name, int maximumSize, Duration ttl, MeterRegistry registry) {
+        var metrics = new CacheMetrics(name, registry);
+        this.entries = Caffeine.newBuilder()
+                               .maximumSize(maximumSize)
+                               .expireAfterWrite(ttl)
+                               // maintenance is a few map operations, it runs on the thread that triggered it
+                               .executor(Runnable::run)
+                               .recordStats(() -> metrics)
+                               .build();
+        metrics.size(this.entries);
+    }
+
+    // available = what the service said is left (balance, stock) when it said no
+    public void put(K key, int available){
+        this.entries.put(key, available);
+    }
+
+    public OptionalInt get(K key){
+        var available = this.entries.getIfPresent(key);
+        return Objects.isNull(available) ? OptionalInt.empty() : OptionalInt.of(available);
+    }
+
+    public void invalidate(K key){
+        this.entries.invalidate(key);
+    }
+
+}
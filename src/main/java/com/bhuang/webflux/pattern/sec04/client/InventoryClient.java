@@ -1,6 +1,8 @@
 package com.bhuang.webflux.pattern.sec04.client;
 
 
+import com.bhuang.webflux.pattern.common.client.BulkCall;
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec04.dto.InventoryRequest;
 import com.bhuang.webflux.pattern.sec04.dto.InventoryResponse;
 import com.bhuang.webflux.pattern.sec04.dto.Status;
@@ -9,17 +11,23 @@ import org.springframework.stereotype.Repository;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Repository
 public class InventoryClient {
 
     private static final String DEDUCT = "deduct";
     private static final String RESTORE = "restore";
+    private static final String RESTORE_BULK = "restore/bulk";
     private final WebClient client;
+    private final BulkCall<InventoryRequest> restoreBulk;
 
-    public InventoryClient(@Value("${sec03.inventory.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public InventoryClient(@Value("${sec03.inventory.service}") String baseUrl,
+                           @Value("${sec04.inventory.bulk-compensation}") boolean bulk,
+                           WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec04-inventory", baseUrl);
+        this.restoreBulk = new BulkCall<>(this.client, RESTORE_BULK, bulk,
+                                          request -> this.restore(request).map(r -> Status.SUCCESS.equals(r.getStatus())), InventoryRequest::getOrderId);
     }
 
     public Mono<InventoryResponse> deduct(InventoryRequest request){
@@ -30,6 +38,11 @@ public class InventoryClient {
         return this.callInventoryService(RESTORE, request);
     }
 
+    // one call for a whole batch of compensations
+    public Mono<Void> restore(List<InventoryRequest> requests){
+        return this.restoreBulk.call(requests);
+    }
+
     private Mono<InventoryResponse> callInventoryService(String endPoint, InventoryRequest request){
         return this.client
                 .post()
@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec04.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec04.dto.Product;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
@@ -11,10 +12,8 @@ public class ProductClient {
 
     private final WebClient client;
 
-    public ProductClient(@Value("${sec03.product.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ProductClient(@Value("${sec03.product.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec04-product", baseUrl);
     }
 
     public Mono<Product> getProduct(Integer id){
@@ -0,0 +1,17 @@
+package com.bhuang.webflux.pattern.sec04.config;
+
+import com.bhuang.webflux.pattern.common.compensation.CompensationProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CancellationConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "sec04.cancellation")
+    public CompensationProperties cancellationProperties(){
+        return new CompensationProperties();
+    }
+
+}
@@ -1,15 +1,29 @@
 package com.bhuang.webflux.pattern.sec04.dto;
 
-import lombok.Data;
+import lombok.Builder;
 import lombok.ToString;
+import lombok.Value;
+import lombok.With;
+import lombok.extern.jackson.Jacksonized;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
-@Data
+/*
+immutable: every stage returns a copy with its own part in it (withXxx), payment and inventory may run in parallel,
+so each one gets a copy with only its own response and the engine merges them in one step (merge(..)).
+all fields are final, a context handed to another thread is always seen complete.
+ */
+@Value
+@With
 @ToString
+@Builder(toBuilder = true)
+@Jacksonized // read back from the cancellation journal
 public class OrchestrationRequestContext {
 
-    private final UUID orderId = UUID.randomUUID();
+    @Builder.Default
+    private UUID orderId = UUID.randomUUID();
     private OrderRequest orderRequest;
     private Integer productPrice;
     private PaymentRequest paymentRequest;
@@ -20,8 +34,22 @@ public class OrchestrationRequestContext {
     private ShippingResponse shippingResponse;
     private Status status;
 
-    public OrchestrationRequestContext(OrderRequest orderRequest){
-        this.orderRequest = orderRequest;
+    public static OrchestrationRequestContext create(OrderRequest orderRequest){
+        return OrchestrationRequestContext.builder().orderRequest(orderRequest).build();
+    }
+
+    // this context with the responses the orchestrators returned, one copy however many there are
+    public static OrchestrationRequestContext merge(OrchestrationRequestContext ctx, List<OrchestrationRequestContext> returned){
+        var builder = ctx.toBuilder();
+        for (var r : returned) {
+            if(Objects.nonNull(r.paymentResponse))
+                builder.paymentResponse(r.paymentResponse);
+            if(Objects.nonNull(r.inventoryResponse))
+                builder.inventoryResponse(r.inventoryResponse);
+            if(Objects.nonNull(r.shippingResponse))
+                builder.shippingResponse(r.shippingResponse);
+        }
+        return builder.build();
     }
 
 }
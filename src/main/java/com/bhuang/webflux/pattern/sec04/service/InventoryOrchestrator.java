@@ -1,15 +1,23 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
 
+import com.bhuang.webflux.pattern.sec04.cache.NegativeCache;
 import com.bhuang.webflux.pattern.sec04.client.InventoryClient;
+import com.bhuang.webflux.pattern.sec04.dto.InventoryRequest;
+import com.bhuang.webflux.pattern.sec04.dto.InventoryResponse;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
 import com.bhuang.webflux.pattern.sec04.dto.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
 @Service
@@ -18,25 +26,71 @@ public class InventoryOrchestrator extends Orchestrator {
     @Autowired
     private InventoryClient client;
 
+    /*
+    speculative: reserve the inventory while the payment is still in flight instead of after it.
+    when the payment fails the order fails, so the reservation is restored by the cancellation journal like any other.
+     */
+    @Value("${sec04.fulfillment.speculative-inventory}")
+    private boolean speculative;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${sec04.fail-fast.ttl}")
+    private Duration failFastTtl;
+
+    @Value("${sec04.fail-fast.maximum-size}")
+    private int failFastMaximumSize;
+
+    // productId -> remaining quantity, of the products a deduction failed for recently
+    private NegativeCache<Integer> outOfStock;
+
+    @PostConstruct
+    public void init(){
+        this.outOfStock = new NegativeCache<>("sec04-inventory-out-of-stock", this.failFastMaximumSize, this.failFastTtl, this.registry);
+    }
+
     @Override
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.client.deduct(ctx.getInventoryRequest())
-                .doOnNext(ctx::setInventoryResponse)
-                .thenReturn(ctx)
+                .doOnNext(this::rememberOutOfStock)
+                .map(ctx::withInventoryResponse)
                 .handle(this.statusHandler());
     }
 
+    @Override
+    public Set<Class<?>> prerequisites() {
+        return this.speculative ? Set.of() : Set.of(PaymentOrchestrator.class);
+    }
+
+    public boolean isSpeculative() {
+        return this.speculative;
+    }
+
+    @Override
+    public boolean isLikelyToFail(OrchestrationRequestContext ctx) {
+        var request = ctx.getInventoryRequest();
+        return this.outOfStock.get(request.getProductId()).stream().anyMatch(remaining -> request.getQuantity() > remaining);
+    }
+
     @Override
     public Predicate<OrchestrationRequestContext> isSuccess() {
         return ctx -> Objects.nonNull(ctx.getInventoryResponse()) && Status.SUCCESS.equals(ctx.getInventoryResponse().getStatus());
     }
 
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return ctx -> Mono.just(ctx)
-                .filter(isSuccess())
-                .map(OrchestrationRequestContext::getInventoryRequest)
-                .flatMap(this.client::restore)
-                .subscribe();
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getInventoryRequest)
+                           .toList();
+        return this.client.restore(requests)
+                          .doOnSuccess(v -> requests.stream().map(InventoryRequest::getProductId).forEach(this.outOfStock::invalidate));
+    }
+
+    // the error response the client builds itself (service down, timeout) has no remaining quantity, that one is not out of stock
+    private void rememberOutOfStock(InventoryResponse response){
+        if(Status.FAILED.equals(response.getStatus()) && Objects.nonNull(response.getRemainingQuantity()))
+            this.outOfStock.put(response.getProductId(), response.getRemainingQuantity());
     }
 }
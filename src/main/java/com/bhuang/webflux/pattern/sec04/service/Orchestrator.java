@@ -1,20 +1,30 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
 
+import com.bhuang.webflux.pattern.common.orchestration.Step;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
 import com.bhuang.webflux.pattern.sec04.exception.OrderFulfillmentFailure;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.SynchronousSink;
 
+import java.util.List;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-public abstract class Orchestrator {
+/*
+one step of the order saga, the steps run as a dependency graph (see Step.prerequisites())
+ */
+public abstract class Orchestrator implements Step<OrchestrationRequestContext> {
 
     public abstract Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx);
     public abstract Predicate<OrchestrationRequestContext> isSuccess();
-    public abstract Consumer<OrchestrationRequestContext> cancel();
+    // compensates a batch of failed orders, the ones this step did not succeed for are skipped
+    public abstract Mono<Void> cancel(List<OrchestrationRequestContext> ctxs);
+
+    // true when this step declined a very similar request a moment ago, the order is rejected before any step runs
+    public boolean isLikelyToFail(OrchestrationRequestContext ctx){
+        return false;
+    }
 
     protected BiConsumer<OrchestrationRequestContext, SynchronousSink<OrchestrationRequestContext>> statusHandler(){
         return (ctx, sink) -> {
@@ -1,11 +1,11 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
 
+import com.bhuang.webflux.pattern.common.audit.AuditSink;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
 import com.bhuang.webflux.pattern.sec04.dto.OrderRequest;
 import com.bhuang.webflux.pattern.sec04.dto.OrderResponse;
 import com.bhuang.webflux.pattern.sec04.dto.Status;
-import com.bhuang.webflux.pattern.sec04.util.DebugUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
@@ -19,18 +19,22 @@ public class OrchestratorService {
     @Autowired
     private OrderCancellationService cancellationService;
 
+    @Autowired
+    private AuditSink auditSink;
+
     public Mono<OrderResponse> placeOrder(Mono<OrderRequest> mono){
         return mono
-                .map(OrchestrationRequestContext::new)
+                .map(OrchestrationRequestContext::create)
                 .flatMap(fulfillmentService::placeOrder)
-                .doOnNext(this::doOrderPostProcessing)
-                .doOnNext(DebugUtil::print) // just for debugging
+                .flatMap(this::doOrderPostProcessing)
+                .doOnNext(ctx -> this.auditSink.record("sec04.order", ctx))
                 .map(this::toOrderResponse);
     }
 
-    private void doOrderPostProcessing(OrchestrationRequestContext ctx){
+    private Mono<OrchestrationRequestContext> doOrderPostProcessing(OrchestrationRequestContext ctx){
         if(Status.FAILED.equals(ctx.getStatus()))
-            this.cancellationService.cancelOrder(ctx);
+            return this.cancellationService.cancelOrder(ctx).thenReturn(ctx);
+        return Mono.just(ctx);
     }
 
     private OrderResponse toOrderResponse(OrchestrationRequestContext ctx){
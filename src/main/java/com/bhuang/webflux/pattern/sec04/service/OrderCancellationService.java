@@ -1,33 +1,61 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
+import com.bhuang.webflux.pattern.common.compensation.CompensationProperties;
+import com.bhuang.webflux.pattern.common.compensation.CompensationQueue;
+import com.bhuang.webflux.pattern.common.orchestration.StepGraph;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.util.List;
 
+/*
+failed orders are compensated in the background through a CompensationQueue: journaled on local disk,
+one worker per orchestrator, compensated in batches, retried and dead-lettered (see CompensationQueue).
+configured under sec04.cancellation.*
+an order no step succeeded for has nothing to compensate and is not journaled, e.g. one rejected by
+OrderFulfillmentService before any step ran.
+ */
 @Service
 public class OrderCancellationService {
 
-    private Sinks.Many<OrchestrationRequestContext> sink;
-    private Flux<OrchestrationRequestContext> flux;
-
     @Autowired
     private List<Orchestrator> orchestrators;
 
+    @Autowired
+    private CompensationProperties properties;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private CompensationQueue<OrchestrationRequestContext, Orchestrator> queue;
+
     @PostConstruct
-    public void  init(){
-        this.sink = Sinks.many().multicast().onBackpressureBuffer();
-        this.flux = this.sink.asFlux().publishOn(Schedulers.boundedElastic());
-        orchestrators.forEach(o -> this.flux.subscribe(o.cancel()));
+    public void init() throws IOException {
+        this.queue = new CompensationQueue<>(this.properties, new StepGraph<>(this.orchestrators), Orchestrator::cancel,
+                                             OrchestrationRequestContext.class, OrchestrationRequestContext::getOrderId,
+                                             this.mapper, this.registry);
+        this.queue.start();
+    }
+
+    @PreDestroy
+    public void destroy(){
+        this.queue.stop();
     }
 
-    public void cancelOrder(OrchestrationRequestContext ctx){
-        this.sink.tryEmitNext(ctx);
+    public Mono<Void> cancelOrder(OrchestrationRequestContext ctx){
+        if(this.orchestrators.stream().noneMatch(o -> o.isSuccess().test(ctx)))
+            return Mono.empty();
+        return this.queue.append(ctx);
     }
 
 }
@@ -1,21 +1,41 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
 
+import com.bhuang.webflux.pattern.common.orchestration.OrchestrationEngine;
+import com.bhuang.webflux.pattern.common.orchestration.StepGraph;
 import com.bhuang.webflux.pattern.sec04.client.ProductClient;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
 import com.bhuang.webflux.pattern.sec04.dto.Product;
 import com.bhuang.webflux.pattern.sec04.dto.Status;
 import com.bhuang.webflux.pattern.sec04.util.OrchestrationUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
+/*
+payment -> inventory -> shipping, the order comes from the prerequisites each orchestrator declares.
+every orchestrator returns a copy of the ctx with its response in it, the engine merges them (OrchestrationRequestContext.merge):
+shipping gets the one merged from payment and inventory, the order the one merged from all three.
+with sec04.fulfillment.speculative-inventory payment and inventory run in parallel, then shipping. counted as
+ - sec04.speculation{result=win}: the whole order succeeded, it saved the shorter of the two calls
+ - sec04.speculation{result=wasted}: the inventory was reserved but the payment failed, the reservation is rolled back
+an order that a step declined a moment ago for the same user / product (see Orchestrator.isLikelyToFail) is rejected
+before any deduction, counted as sec04.orders.rejected
+ */
 @Service
 public class OrderFulfillmentService {
 
     @Autowired
     private ProductClient productClient;
 
+    @Autowired
+    private List<Orchestrator> orchestrators;
+
     @Autowired
     private PaymentOrchestrator paymentOrchestrator;
 
@@ -23,26 +43,60 @@ public class OrderFulfillmentService {
     private InventoryOrchestrator inventoryOrchestrator;
 
     @Autowired
-    private ShippingOrchestrator shippingOrchestrator;
+    private MeterRegistry registry;
+
+    private OrchestrationEngine<OrchestrationRequestContext, Orchestrator> engine;
+    private Counter speculationWins;
+    private Counter speculationWasted;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init(){
+        this.engine = new OrchestrationEngine<>("sec04", new StepGraph<>(this.orchestrators), OrchestrationRequestContext::merge, this.registry);
+        this.speculationWins = Counter.builder("sec04.speculation").tag("result", "win").register(this.registry);
+        this.speculationWasted = Counter.builder("sec04.speculation").tag("result", "wasted")
+                                        .description("speculative inventory reservations rolled back because the payment failed")
+                                        .register(this.registry);
+        this.rejected = Counter.builder("sec04.orders.rejected")
+                               .description("orders failed fast from recent declines, without calling any service")
+                               .register(this.registry);
+    }
 
     public Mono<OrchestrationRequestContext> placeOrder(OrchestrationRequestContext ctx){
         return this.getProduct(ctx)
-                .doOnNext(OrchestrationUtil::buildPaymentRequest)
-                .flatMap(this.paymentOrchestrator::create)
-                .doOnNext(OrchestrationUtil::buildInventoryRequest)
-                .flatMap(this.inventoryOrchestrator::create)
-                .doOnNext(OrchestrationUtil::buildShippingRequest)
-                .flatMap(this.shippingOrchestrator::create)
-                .doOnNext(c -> c.setStatus(Status.SUCCESS))
-                .doOnError(ex -> ctx.setStatus(Status.FAILED))
-                .onErrorReturn(ctx);
+                .map(OrchestrationUtil::buildRequestContext)
+                .flatMap(c -> this.isLikelyToFail(c) ? this.reject(c) : this.fulfill(c));
+    }
+
+    private Mono<OrchestrationRequestContext> fulfill(OrchestrationRequestContext ctx){
+        return this.engine.run(ctx)
+                          .doOnNext(this::countSpeculation)
+                          .map(result -> result.ctx().withStatus(result.success() ? Status.SUCCESS : Status.FAILED));
+    }
+
+    private boolean isLikelyToFail(OrchestrationRequestContext ctx){
+        return this.orchestrators.stream().anyMatch(o -> o.isLikelyToFail(ctx));
+    }
+
+    private Mono<OrchestrationRequestContext> reject(OrchestrationRequestContext ctx){
+        this.rejected.increment();
+        return Mono.just(ctx.withStatus(Status.FAILED));
+    }
+
+    // an order that failed at shipping would have reserved the inventory either way, that is neither
+    private void countSpeculation(OrchestrationEngine.Result<OrchestrationRequestContext, Orchestrator> result){
+        if(!this.inventoryOrchestrator.isSpeculative() || !result.succeeded().contains(this.inventoryOrchestrator))
+            return;
+        if(result.success())
+            this.speculationWins.increment();
+        else if(!result.succeeded().contains(this.paymentOrchestrator))
+            this.speculationWasted.increment();
     }
 
     private Mono<OrchestrationRequestContext> getProduct(OrchestrationRequestContext ctx){
         return this.productClient.getProduct(ctx.getOrderRequest().getProductId())
                                  .map(Product::getPrice)
-                                 .doOnNext(ctx::setProductPrice)
-                                 .map(i -> ctx);
+                                 .map(ctx::withProductPrice);
     }
 
 }
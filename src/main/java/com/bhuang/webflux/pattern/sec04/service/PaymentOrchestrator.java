@@ -1,14 +1,21 @@
 package com.bhuang.webflux.pattern.sec04.service;
 
+import com.bhuang.webflux.pattern.sec04.cache.NegativeCache;
 import com.bhuang.webflux.pattern.sec04.client.UserClient;
 import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
+import com.bhuang.webflux.pattern.sec04.dto.PaymentRequest;
+import com.bhuang.webflux.pattern.sec04.dto.PaymentResponse;
 import com.bhuang.webflux.pattern.sec04.dto.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.List;
 import java.util.function.Predicate;
 
 @Service
@@ -17,26 +24,56 @@ public class PaymentOrchestrator extends Orchestrator {
     @Autowired
     private UserClient client;
 
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${sec04.fail-fast.ttl}")
+    private Duration failFastTtl;
+
+    @Value("${sec04.fail-fast.maximum-size}")
+    private int failFastMaximumSize;
+
+    // userId -> balance, of the users whose payment was declined recently
+    private NegativeCache<Integer> declined;
+
+    @PostConstruct
+    public void init(){
+        this.declined = new NegativeCache<>("sec04-payment-declined", this.failFastMaximumSize, this.failFastTtl, this.registry);
+    }
+
     @Override
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.client.deduct(ctx.getPaymentRequest())
-                .doOnNext(ctx::setPaymentResponse)
-                .thenReturn(ctx)
+                .doOnNext(this::rememberDecline)
+                .map(ctx::withPaymentResponse)
                 .handle(this.statusHandler());
     }
 
+    @Override
+    public boolean isLikelyToFail(OrchestrationRequestContext ctx) {
+        var request = ctx.getPaymentRequest();
+        return this.declined.get(request.getUserId()).stream().anyMatch(balance -> request.getAmount() > balance);
+    }
+
     @Override
     public Predicate<OrchestrationRequestContext> isSuccess() {
         return ctx -> Objects.nonNull(ctx.getPaymentResponse()) && Status.SUCCESS.equals(ctx.getPaymentResponse().getStatus());
     }
 
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return ctx -> Mono.just(ctx)
-                .filter(isSuccess())
-                .map(OrchestrationRequestContext::getPaymentRequest)
-                .flatMap(this.client::refund)
-                .subscribe();
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getPaymentRequest)
+                           .toList();
+        return this.client.refund(requests)
+                          .doOnSuccess(v -> requests.stream().map(PaymentRequest::getUserId).forEach(this.declined::invalidate));
+    }
+
+    // the error response the client builds itself (service down, timeout) has no name, that one is not a decline
+    private void rememberDecline(PaymentResponse response){
+        if(Status.FAILED.equals(response.getStatus()) && Objects.nonNull(response.getName()) && Objects.nonNull(response.getBalance()))
+            this.declined.put(response.getUserId(), response.getBalance());
     }
 
 }
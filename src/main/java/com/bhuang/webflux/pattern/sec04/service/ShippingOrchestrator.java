@@ -8,7 +8,8 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.util.Objects;
-import java.util.function.Consumer;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
 @Service
@@ -20,22 +21,26 @@ public class ShippingOrchestrator extends Orchestrator {
     @Override
     public Mono<OrchestrationRequestContext> create(OrchestrationRequestContext ctx) {
         return this.client.schedule(ctx.getShippingRequest())
-                .doOnNext(ctx::setShippingResponse)
-                .thenReturn(ctx)
+                .map(ctx::withShippingResponse)
                 .handle(this.statusHandler());
     }
 
+    @Override
+    public Set<Class<?>> prerequisites() {
+        return Set.of(PaymentOrchestrator.class, InventoryOrchestrator.class);
+    }
+
     @Override
     public Predicate<OrchestrationRequestContext> isSuccess() {
         return ctx -> Objects.nonNull(ctx.getShippingResponse()) && Status.SUCCESS.equals(ctx.getShippingResponse().getStatus());
     }
 
     @Override
-    public Consumer<OrchestrationRequestContext> cancel() {
-        return ctx -> Mono.just(ctx)
-                .filter(isSuccess())
-                .map(OrchestrationRequestContext::getShippingRequest)
-                .flatMap(this.client::cancel)
-                .subscribe();
+    public Mono<Void> cancel(List<OrchestrationRequestContext> ctxs) {
+        var requests = ctxs.stream()
+                           .filter(isSuccess())
+                           .map(OrchestrationRequestContext::getShippingRequest)
+                           .toList();
+        return this.client.cancel(requests);
     }
 }
@@ -8,37 +8,37 @@ import com.bhuang.webflux.pattern.sec04.dto.ShippingRequest;
 
 public class OrchestrationUtil {
 
-    public static void buildRequestContext(OrchestrationRequestContext ctx){
-        buildPaymentRequest(ctx);
-        buildInventoryRequest(ctx);
-        buildShippingRequest(ctx);
+    // the context is immutable, this returns a copy with all three requests in it
+    public static OrchestrationRequestContext buildRequestContext(OrchestrationRequestContext ctx){
+        return ctx.toBuilder()
+                  .paymentRequest(buildPaymentRequest(ctx))
+                  .inventoryRequest(buildInventoryRequest(ctx))
+                  .shippingRequest(buildShippingRequest(ctx))
+                  .build();
     }
 
-    public static void buildPaymentRequest(OrchestrationRequestContext ctx){
-        var paymentRequest = PaymentRequest.create(
+    private static PaymentRequest buildPaymentRequest(OrchestrationRequestContext ctx){
+        return PaymentRequest.create(
                 ctx.getOrderRequest().getUserId(),
                 ctx.getProductPrice() * ctx.getOrderRequest().getQuantity(),
                 ctx.getOrderId()
         );
-        ctx.setPaymentRequest(paymentRequest);
     }
 
-    public static void buildInventoryRequest(OrchestrationRequestContext ctx){
-        var inventoryRequest = InventoryRequest.create(
+    private static InventoryRequest buildInventoryRequest(OrchestrationRequestContext ctx){
+        return InventoryRequest.create(
             ctx.getOrderId(),
             ctx.getOrderRequest().getProductId(),
             ctx.getOrderRequest().getQuantity()
         );
-        ctx.setInventoryRequest(inventoryRequest);
     }
 
-    public static void buildShippingRequest(OrchestrationRequestContext ctx){
-        var shippingRequest = ShippingRequest.create(
+    private static ShippingRequest buildShippingRequest(OrchestrationRequestContext ctx){
+        return ShippingRequest.create(
                 ctx.getOrderRequest().getQuantity(),
                 ctx.getOrderRequest().getUserId(),
                 ctx.getOrderId()
         );
-        ctx.setShippingRequest(shippingRequest);
     }
 
 }
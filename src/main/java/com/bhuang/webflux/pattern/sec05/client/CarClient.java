@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec05.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec05.dto.CarReservationRequest;
 import com.bhuang.webflux.pattern.sec05.dto.CarReservationResponse;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,10 +14,8 @@ public class CarClient {
 
     private final WebClient client;
 
-    public CarClient(@Value("${sec05.car.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public CarClient(@Value("${sec05.car.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec05-car", baseUrl);
     }
 
     public Flux<CarReservationResponse> reserve(Flux<CarReservationRequest> flux){
@@ -1,5 +1,6 @@
 package com.bhuang.webflux.pattern.sec05.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
 import com.bhuang.webflux.pattern.sec05.dto.RoomReservationRequest;
 import com.bhuang.webflux.pattern.sec05.dto.RoomReservationResponse;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,10 +14,8 @@ public class RoomClient {
 
     private final WebClient client;
 
-    public RoomClient(@Value("${sec05.room.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public RoomClient(@Value("${sec05.room.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec05-room", baseUrl);
     }
 
     public Flux<RoomReservationResponse> reserve(Flux<RoomReservationRequest> flux){
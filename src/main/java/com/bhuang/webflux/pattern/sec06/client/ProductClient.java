@@ -1,6 +1,10 @@
 package com.bhuang.webflux.pattern.sec06.client;
 
+import com.bhuang.webflux.pattern.common.client.Hedger;
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
 import com.bhuang.webflux.pattern.sec06.dto.Product;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -12,23 +16,30 @@ import java.time.Duration;
 public class ProductClient {
 
     private final WebClient client;
+    private final Hedger hedger;
 
-    public ProductClient(@Value("${sec06.product.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ProductClient(@Value("${sec06.product.service}") String baseUrl,
+                         @Value("${sec06.product.hedge.enabled}") boolean hedgeEnabled,
+                         @Value("${sec06.product.hedge.delay}") Duration hedgeDelay,
+                         @Value("${sec06.product.hedge.percentile}") double hedgePercentile,
+                         @Value("${sec06.product.hedge.budget-percent}") double hedgeBudgetPercent,
+                         WebClientFactory webClientFactory,
+                         MeterRegistry registry){
+        this.client = webClientFactory.create("sec06-product", baseUrl);
+        this.hedger = new Hedger("sec06.product", hedgeEnabled, hedgeDelay, hedgePercentile, hedgeBudgetPercent, registry);
     }
 
     /*
     timeout , when over timeout, will return empty
+    the timeout covers the first call and its hedge together
      */
     public Mono<Product> getProduct(Integer id){
-        return this.client
-                .get()
-                .uri("{id}", id)
-                .retrieve()
-                .bodyToMono(Product.class)
-                .timeout(Duration.ofMillis(500))
+        return this.hedger.hedge(() -> this.client
+                        .get()
+                        .uri("{id}", id)
+                        .retrieve()
+                        .bodyToMono(Product.class))
+                .transform(DeadlineUtil.timeout(Duration.ofMillis(500)))
                 .onErrorResume(ex -> Mono.empty());
     }
 
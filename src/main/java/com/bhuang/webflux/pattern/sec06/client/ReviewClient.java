@@ -1,5 +1,7 @@
 package com.bhuang.webflux.pattern.sec06.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
 import com.bhuang.webflux.pattern.sec06.dto.Review;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -15,10 +17,8 @@ public class ReviewClient {
 
     private final WebClient client;
 
-    public ReviewClient(@Value("${sec06.review.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ReviewClient(@Value("${sec06.review.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec06-review", baseUrl);
     }
 
     public Mono<List<Review>> getReviews(Integer id){
@@ -28,7 +28,7 @@ public class ReviewClient {
                 .retrieve()
                 .bodyToFlux(Review.class)
                 .collectList()
-                .timeout(Duration.ofMillis(500))
+                .transform(DeadlineUtil.timeout(Duration.ofMillis(500)))
                 .onErrorReturn(Collections.emptyList());
     }
 
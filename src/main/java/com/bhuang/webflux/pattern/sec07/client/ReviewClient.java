@@ -1,5 +1,7 @@
 package com.bhuang.webflux.pattern.sec07.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
 import com.bhuang.webflux.pattern.sec07.dto.Review;
 import com.bhuang.webflux.pattern.sec07.exceptions.RetryException;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,10 +25,8 @@ public class ReviewClient {
 
     private final Random random = new Random();
 
-    public ReviewClient(@Value("${sec07.review.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ReviewClient(@Value("${sec07.review.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec07-review", baseUrl);
     }
 
     /*
@@ -58,7 +58,7 @@ public class ReviewClient {
 
 
 //                .retry(5)
-                .timeout(Duration.ofMillis(300))
+                .transform(DeadlineUtil.timeout(Duration.ofMillis(300)))
                 .onErrorReturn(Collections.emptyList());
     }
 
@@ -1,5 +1,7 @@
 package com.bhuang.webflux.pattern.sec08.client;
 
+import com.bhuang.webflux.pattern.common.client.WebClientFactory;
+import com.bhuang.webflux.pattern.common.deadline.DeadlineUtil;
 import com.bhuang.webflux.pattern.sec08.dto.Review;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,10 +19,8 @@ public class ReviewClient {
 
     private final WebClient client;
 
-    public ReviewClient(@Value("${sec08.review.service}") String baseUrl){
-        this.client = WebClient.builder()
-                               .baseUrl(baseUrl)
-                               .build();
+    public ReviewClient(@Value("${sec08.review.service}") String baseUrl, WebClientFactory webClientFactory){
+        this.client = webClientFactory.create("sec08-review", baseUrl);
     }
 
     @CircuitBreaker(name = "review-service", fallbackMethod = "fallBackReview")
@@ -33,7 +33,7 @@ public class ReviewClient {
                 .bodyToFlux(Review.class)
                 .collectList()
                 .retry(5)
-                .timeout(Duration.ofMillis(300));
+                .transform(DeadlineUtil.timeout(Duration.ofMillis(300)));
     }
 
     public Mono<List<Review>> fallBackReview(Integer id, Throwable ex){
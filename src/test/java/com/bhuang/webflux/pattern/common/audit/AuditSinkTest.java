@@ -0,0 +1,107 @@
+package com.bhuang.webflux.pattern.common.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditSinkTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsAreWrittenAsJsonLines() throws Exception {
+        var sink = this.sink(this.properties());
+        sink.start();
+        sink.record("order", Map.of("orderId", 1));
+        sink.record("order", Map.of("orderId", 2));
+        sink.stop();
+
+        var lines = Files.readAllLines(this.directory.resolve("audit.log"));
+        assertEquals(2, lines.size());
+        var first = this.mapper.readTree(lines.get(0));
+        assertEquals("order", first.get("type").asText());
+        assertEquals(1, first.get("record").get("orderId").asInt());
+        assertTrue(first.get("timestamp").asLong() > 0);
+        assertEquals(2, this.count("written"));
+    }
+
+    @Test
+    void fullRingDropsRightAway(){
+        var properties = this.properties();
+        properties.setCapacity(4);
+        // not started: nothing drains the ring
+        var sink = this.sink(properties);
+        for (var i = 0; i < 4; i++)
+            assertTrue(sink.record("order", i));
+        assertFalse(sink.record("order", 4));
+        assertEquals(1, this.count("dropped"));
+    }
+
+    @Test
+    void fullRingWithBlockWaitsThenDrops(){
+        var properties = this.properties();
+        properties.setCapacity(2);
+        properties.setOverflowPolicy(AuditProperties.OverflowPolicy.BLOCK);
+        properties.setBlockTimeout(Duration.ofMillis(20));
+        var sink = this.sink(properties);
+        sink.record("order", 1);
+        sink.record("order", 2);
+        var start = System.nanoTime();
+        assertFalse(sink.record("order", 3));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+        assertEquals(1, this.count("dropped"));
+    }
+
+    @Test
+    void fileRollsAtMaxSizeAndKeepsMaxFiles() throws Exception {
+        var properties = this.properties();
+        properties.setMaxFileSize(DataSize.ofBytes(100));
+        properties.setMaxFiles(3);
+        var sink = this.sink(properties);
+        sink.start();
+        for (var i = 0; i < 20; i++)
+            sink.record("order", Map.of("orderId", i));
+        sink.stop();
+
+        assertTrue(Files.exists(this.directory.resolve("audit.log")));
+        assertTrue(Files.exists(this.directory.resolve("audit.1.log")));
+        assertTrue(Files.exists(this.directory.resolve("audit.2.log")));
+        assertFalse(Files.exists(this.directory.resolve("audit.3.log")));
+        for (var file : new String[]{"audit.log", "audit.1.log", "audit.2.log"})
+            assertTrue(Files.size(this.directory.resolve(file)) <= 100);
+        // the newest record is in the current file
+        var lines = Files.readAllLines(this.directory.resolve("audit.log"));
+        assertEquals(19, this.mapper.readTree(lines.get(lines.size() - 1)).get("record").get("orderId").asInt());
+    }
+
+    private AuditProperties properties(){
+        var properties = new AuditProperties();
+        properties.setDirectory(this.directory);
+        return properties;
+    }
+
+    private AuditSink sink(AuditProperties properties){
+        return new AuditSink(properties, this.mapper, this.registry);
+    }
+
+    private double count(String result){
+        return this.registry.get("audit.records").tag("result", result).counter().count();
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import com.bhuang.webflux.pattern.common.compensation.CompensationFailure;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BulkCallTest {
+
+    private final AtomicInteger bulkCalls = new AtomicInteger();
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private final List<Item> items = List.of(new Item(UUID.randomUUID()), new Item(UUID.randomUUID()));
+    private DisposableServer server;
+
+    @AfterEach
+    void stop(){
+        if(Objects.nonNull(this.server))
+            this.server.disposeNow();
+    }
+
+    @Test
+    void disabledSendsEveryItemOnItsOwn(){
+        StepVerifier.create(this.bulkCall(this.respondingWith(200), false, true).call(this.items)).verifyComplete();
+        assertEquals(0, this.bulkCalls.get());
+        assertEquals(2, this.singleCalls.get());
+    }
+
+    @Test
+    void bulkCallReplacesTheSingleCalls(){
+        StepVerifier.create(this.bulkCall(this.respondingWith(200), true, true).call(this.items)).verifyComplete();
+        assertEquals(1, this.bulkCalls.get());
+        assertEquals(0, this.singleCalls.get());
+    }
+
+    @Test
+    void missingBulkEndpointFallsBackAndIsNotAskedAgain(){
+        for (var status : List.of(404, 405, 501)) {
+            this.bulkCalls.set(0);
+            this.singleCalls.set(0);
+            var bulkCall = this.bulkCall(this.respondingWith(status), true, true);
+            StepVerifier.create(bulkCall.call(this.items)).verifyComplete();
+            StepVerifier.create(bulkCall.call(this.items)).verifyComplete();
+            assertEquals(1, this.bulkCalls.get());
+            assertEquals(4, this.singleCalls.get());
+            this.stop();
+        }
+    }
+
+    @Test
+    void serverErrorFailsTheBatchWithoutSendingTheItemsAgain(){
+        StepVerifier.create(this.bulkCall(this.respondingWith(500), true, true).call(this.items))
+                    .verifyError(WebClientResponseException.InternalServerError.class);
+        assertEquals(0, this.singleCalls.get());
+    }
+
+    @Test
+    void refusedConnectionFallsBack(){
+        var closed = HttpServer.create().port(0).bindNow();
+        var port = closed.port();
+        closed.disposeNow();
+        var bulkCall = new BulkCall<>(WebClient.create("http://localhost:" + port), "bulk", true, this::single, Item::orderId);
+        StepVerifier.create(bulkCall.call(this.items)).verifyComplete();
+        assertEquals(2, this.singleCalls.get());
+    }
+
+    @Test
+    void failedSingleCallsAreListed(){
+        var bulkCall = this.bulkCall(this.respondingWith(200), false, false);
+        StepVerifier.create(bulkCall.call(this.items))
+                    .expectErrorSatisfies(ex -> assertEquals(Set.of(this.items.get(0).orderId(), this.items.get(1).orderId()),
+                                                             ((CompensationFailure) ex).getOrderIds()))
+                    .verify();
+    }
+
+    @Test
+    void emptyBatchCallsNothing(){
+        StepVerifier.create(this.bulkCall(this.respondingWith(200), true, true).call(List.of())).verifyComplete();
+        assertEquals(0, this.bulkCalls.get());
+    }
+
+    private String respondingWith(int status){
+        this.server = HttpServer.create()
+                                .port(0)
+                                .route(routes -> routes.post("/bulk", (request, response) -> {
+                                    this.bulkCalls.incrementAndGet();
+                                    return request.receive().then(response.status(status).send());
+                                }))
+                                .bindNow();
+        return "http://localhost:" + this.server.port();
+    }
+
+    private BulkCall<Item> bulkCall(String baseUrl, boolean enabled, boolean singleSucceeds){
+        return new BulkCall<>(WebClient.create(baseUrl), "bulk", enabled,
+                              item -> this.single(item).map(ok -> ok && singleSucceeds), Item::orderId);
+    }
+
+    private Mono<Boolean> single(Item item){
+        return Mono.fromSupplier(() -> this.singleCalls.incrementAndGet() > 0);
+    }
+
+    private record Item(UUID orderId) {
+    }
+
+}
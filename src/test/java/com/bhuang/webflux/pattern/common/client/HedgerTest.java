@@ -0,0 +1,136 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HedgerTest {
+
+    private static final Duration DELAY = Duration.ofMillis(100);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void hedgeFiresAfterTheDelayAndWins(){
+        var hedger = this.hedger(0, 100);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(Mono.never(), Mono.just("hedge"))))
+                    .expectSubscription()
+                    .expectNoEvent(DELAY.minusMillis(1))
+                    .then(() -> assertEquals(1, this.calls.get()))
+                    .thenAwait(Duration.ofMillis(1))
+                    .expectNext("hedge")
+                    .verifyComplete();
+        assertEquals(2, this.calls.get());
+        assertEquals(1, this.count("client.hedge.issued"));
+        assertEquals(1, this.count("client.hedge.won"));
+    }
+
+    @Test
+    void hedgeWaitsForThePercentileOfTheObservedLatency(){
+        // a fixed delay far above what the calls take, so a hedge before it can only come from the percentile
+        var hedger = new Hedger("test", true, Duration.ofSeconds(5), 0.99, 100, this.registry);
+        Flux.range(0, 100)
+            .flatMap(i -> hedger.hedge(() -> Mono.delay(Duration.ofMillis(20)).thenReturn(i)))
+            .blockLast();
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(Mono.never(), Mono.just("hedge"))))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(19))
+                    .then(() -> assertEquals(1, this.calls.get()))
+                    .thenAwait(Duration.ofSeconds(1))
+                    .expectNext("hedge")
+                    .verifyComplete();
+    }
+
+    @Test
+    void noHedgeWithoutBudget(){
+        var hedger = this.hedger(0, 0);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(Mono.delay(DELAY.multipliedBy(2)).thenReturn("primary"), Mono.just("hedge"))))
+                    .expectSubscription()
+                    .thenAwait(DELAY.multipliedBy(2))
+                    .expectNext("primary")
+                    .verifyComplete();
+        assertEquals(1, this.calls.get());
+        assertEquals(1, this.count("client.hedge.throttled"));
+        assertEquals(0, this.count("client.hedge.issued"));
+    }
+
+    @Test
+    void primaryErrorBeforeTheHedgeFiresIsReturned(){
+        var hedger = this.hedger(0, 100);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(this.error(DELAY.dividedBy(2)), Mono.just("hedge"))))
+                    .expectSubscription()
+                    .thenAwait(DELAY.dividedBy(2))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        assertEquals(1, this.calls.get());
+        assertEquals(0, this.count("client.hedge.issued"));
+    }
+
+    @Test
+    void primaryErrorAfterTheHedgeFiredWaitsForTheHedge(){
+        var hedger = this.hedger(0, 100);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(this.error(DELAY.multipliedBy(3).dividedBy(2)),
+                                                                   Mono.delay(DELAY).thenReturn("hedge"))))
+                    .expectSubscription()
+                    .expectNoEvent(DELAY.multipliedBy(2).minusMillis(1))
+                    .thenAwait(Duration.ofMillis(1))
+                    .expectNext("hedge")
+                    .verifyComplete();
+        assertEquals(1, this.count("client.hedge.won"));
+    }
+
+    @Test
+    void primaryErrorIsReturnedWhenTheHedgeFailsToo(){
+        var hedger = this.hedger(0, 100);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(this.error(DELAY.multipliedBy(3).dividedBy(2)),
+                                                                   Mono.delay(DELAY).then(Mono.error(new IllegalArgumentException())))))
+                    .expectSubscription()
+                    .expectNoEvent(DELAY.multipliedBy(2).minusMillis(1))
+                    .thenAwait(Duration.ofMillis(1))
+                    .expectError(IllegalStateException.class)
+                    .verify();
+        assertEquals(0, this.count("client.hedge.won"));
+    }
+
+    @Test
+    void primaryAnsweringFirstIsNotAHedgeWin(){
+        var hedger = this.hedger(0, 100);
+        StepVerifier.withVirtualTime(() -> hedger.hedge(this.calls(Mono.delay(DELAY.multipliedBy(3).dividedBy(2)).thenReturn("primary"),
+                                                                   Mono.delay(DELAY).thenReturn("hedge"))))
+                    .expectSubscription()
+                    .thenAwait(DELAY.multipliedBy(3).dividedBy(2))
+                    .expectNext("primary")
+                    .verifyComplete();
+        assertEquals(1, this.count("client.hedge.issued"));
+        assertEquals(0, this.count("client.hedge.won"));
+    }
+
+    private Hedger hedger(double percentile, double budgetPercent){
+        return new Hedger("test", true, DELAY, percentile, budgetPercent, this.registry);
+    }
+
+    // the first call gets primary, every later one (the hedge) gets hedge
+    private Supplier<Mono<String>> calls(Mono<String> primary, Mono<String> hedge){
+        var answers = List.of(primary, hedge);
+        return () -> answers.get(Math.min(this.calls.getAndIncrement(), 1));
+    }
+
+    private Mono<String> error(Duration after){
+        return Mono.delay(after).then(Mono.error(new IllegalStateException()));
+    }
+
+    private double count(String name){
+        return this.registry.get(name).counter().count();
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.bhuang.webflux.pattern.common.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+HTTP/1.1 vs h2c from the same WebClientFactory pool to one local downstream.
+every operation is a fan-out of FAN_OUT concurrent GETs (like a sec01 / sec03 order) that answer after 10ms,
+from 4 threads at once. reported:
+ - latency of the whole fan-out (p50 / p99), by JMH
+ - tcp connections the downstream accepted during the trial, printed at the end of each trial
+run: the main method, or mvn test-compile and then this class with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(4)
+@Fork(1)
+public class WebClientFactoryBenchmark {
+
+    private static final int FAN_OUT = 50;
+
+    @Param({"http11", "h2c"})
+    private String protocol;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private DisposableServer downstream;
+    private WebClientFactory factory;
+    private WebClient client;
+
+    @Setup
+    public void setup(){
+        this.downstream = HttpServer.create()
+                                    .port(0)
+                                    .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                                    .doOnChannelInit((observer, channel, address) -> this.connections.incrementAndGet())
+                                    .route(routes -> routes.get("/item/{id}", (request, response) -> response
+                                            .header("Content-Type", "application/json")
+                                            .sendString(Mono.delay(Duration.ofMillis(10))
+                                                            .thenReturn("{\"id\":" + request.param("id") + "}"))))
+                                    .bindNow();
+        var properties = new WebClientProperties();
+        properties.getDefaults().setH2c("h2c".equals(this.protocol));
+        var beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("webClientBuilder", WebClient.builder());
+        this.factory = new WebClientFactory(properties, beans.getBeanProvider(WebClient.Builder.class));
+        this.client = this.factory.create("benchmark", "http://localhost:" + this.downstream.port());
+    }
+
+    @TearDown
+    public void tearDown(){
+        System.out.println();
+        System.out.println(this.protocol + ": " + this.connections.get() + " connections opened");
+        this.factory.destroy();
+        this.downstream.disposeNow();
+    }
+
+    @Benchmark
+    public List<String> fanOut(){
+        return Flux.range(0, FAN_OUT)
+                   .flatMap(id -> this.client.get()
+                                             .uri("/item/{id}", id)
+                                             .retrieve()
+                                             .bodyToMono(String.class))
+                   .collectList()
+                   .block();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WebClientFactoryBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.bhuang.webflux.pattern.common.compensation;
+
+import com.bhuang.webflux.pattern.common.orchestration.Step;
+import com.bhuang.webflux.pattern.common.orchestration.StepGraph;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompensationQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void orderTheJournalHasNoRoomForIsRejected() throws IOException {
+        var queue = this.queue((step, orders) -> Mono.empty());
+        queue.start();
+        try {
+            // one segment of 200 bytes holds 4 orders of 50
+            for (int i = 0; i < 4; i++)
+                StepVerifier.create(queue.append(UUID.randomUUID().toString())).verifyComplete();
+            StepVerifier.create(queue.append(UUID.randomUUID().toString()))
+                        .verifyError(CompensationRejected.class);
+            assertEquals(1, this.rejected("cancellation"));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void batchWaitsUncommittedWhileItsDeadLettersDoNotFit() throws IOException {
+        var queue = this.queue((step, orders) -> Mono.error(new IllegalStateException("down")));
+        queue.start();
+        try {
+            // only the first of the two dead letters fits
+            queue.append(UUID.randomUUID().toString()).block();
+            queue.append(UUID.randomUUID().toString()).block();
+            await().atMost(Duration.ofSeconds(5)).until(() -> this.rejected("dead-letter") >= 2);
+            assertEquals(2, this.registry.get("order.compensation.queue.depth").gauge().value());
+            assertEquals(0, this.registry.get("order.compensation.dead.letters").counter().count());
+            assertEquals(0, this.rejected("cancellation"));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    private CompensationQueue<String, Refund> queue(BiFunction<Refund, List<String>, Mono<Void>> compensation){
+        var properties = new CompensationProperties();
+        properties.getJournal().setDirectory(this.directory.resolve("journal"));
+        properties.getJournal().setSegmentSize(DataSize.ofBytes(200));
+        properties.getJournal().setMaxSegments(1);
+        properties.getDeadLetter().setDirectory(this.directory.resolve("dead-letter"));
+        properties.setPollInterval(Duration.ofMillis(10));
+        properties.setBatchWindow(Duration.ofMillis(10));
+        properties.getRetry().setMaxAttempts(0);
+        properties.getRetry().setMinBackoff(Duration.ofMillis(10));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(20));
+        return new CompensationQueue<>(properties, new StepGraph<>(List.of(new Refund())), compensation,
+                                       String.class, UUID::fromString, new ObjectMapper(), this.registry);
+    }
+
+    private double rejected(String journal){
+        return this.registry.get("order.compensation.rejected").tag("journal", journal).counter().count();
+    }
+
+    private static class Refund implements Step<String> {
+
+        @Override
+        public Mono<String> create(String ctx) {
+            return Mono.just(ctx);
+        }
+
+        @Override
+        public Predicate<String> isSuccess() {
+            return ctx -> true;
+        }
+
+    }
+
+}
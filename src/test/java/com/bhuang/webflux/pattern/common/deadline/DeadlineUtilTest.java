@@ -0,0 +1,112 @@
+package com.bhuang.webflux.pattern.common.deadline;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlineUtilTest {
+
+    private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/product/1")).build();
+    // the header of the last request that went out
+    private final AtomicReference<String> forwarded = new AtomicReference<>();
+    private final AtomicInteger exchanges = new AtomicInteger();
+
+    @Test
+    void budgetIsTheLocalTimeoutOrWhatIsLeftIfThatIsLess(){
+        assertEquals(Duration.ofSeconds(1), DeadlineUtil.budget(Context.empty(), Duration.ofSeconds(1)));
+        assertEquals(Duration.ofSeconds(1), DeadlineUtil.budget(this.deadline(Duration.ofSeconds(5)), Duration.ofSeconds(1)));
+        var shrunk = DeadlineUtil.budget(this.deadline(Duration.ofMillis(200)), Duration.ofSeconds(1));
+        assertTrue(shrunk.compareTo(Duration.ofMillis(200)) <= 0 && shrunk.compareTo(Duration.ofMillis(100)) > 0, shrunk::toString);
+        assertEquals(Duration.ZERO, DeadlineUtil.budget(this.deadline(Duration.ofMillis(-1)), Duration.ofSeconds(1)));
+    }
+
+    @Test
+    void timeoutIsCutToTheRemainingBudget(){
+        StepVerifier.create(Mono.never()
+                                .transform(DeadlineUtil.timeout(Duration.ofSeconds(5)))
+                                .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, Duration.ofMillis(100))))
+                    .expectError(TimeoutException.class)
+                    .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void propagateForwardsTheRemainingBudget(){
+        StepVerifier.create(this.exchange(this.answering())
+                                .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, Duration.ofMillis(500))))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        var budget = Long.parseLong(this.forwarded.get());
+        assertTrue(budget <= 500 && budget > 400, () -> String.valueOf(budget));
+    }
+
+    @Test
+    void propagateWaitsNoLongerThanTheRemainingBudget(){
+        StepVerifier.create(this.exchange(request -> {
+                                    this.forwarded.set(request.headers().getFirst(DeadlineUtil.HEADER));
+                                    return Mono.never();
+                                })
+                                .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, Duration.ofMillis(100))))
+                    .expectError(TimeoutException.class)
+                    .verify(Duration.ofSeconds(1));
+        assertTrue(Long.parseLong(this.forwarded.get()) <= 100);
+    }
+
+    @Test
+    void propagateFailsFastOnceTheBudgetIsSpent(){
+        StepVerifier.create(this.exchange(this.answering())
+                                .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, Duration.ZERO)))
+                    .expectError(TimeoutException.class)
+                    .verify();
+        assertEquals(0, this.exchanges.get());
+    }
+
+    @Test
+    void withoutDeadlineNothingIsForwarded(){
+        StepVerifier.create(this.exchange(this.answering())).expectNextCount(1).verifyComplete();
+        assertEquals(1, this.exchanges.get());
+        assertNull(this.forwarded.get());
+    }
+
+    @Test
+    void detachRemovesTheDeadline(){
+        StepVerifier.create(this.exchange(this.answering())
+                                .contextWrite(DeadlineUtil::detach)
+                                .contextWrite(ctx -> DeadlineUtil.withDeadline(ctx, Duration.ZERO)))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        assertNull(this.forwarded.get());
+    }
+
+    private Context deadline(Duration timeout){
+        return DeadlineUtil.withDeadline(Context.empty(), timeout);
+    }
+
+    private Mono<ClientResponse> exchange(ExchangeFunction next){
+        return DeadlineUtil.propagate().filter(this.request, next);
+    }
+
+    private ExchangeFunction answering(){
+        return request -> {
+            this.exchanges.incrementAndGet();
+            this.forwarded.set(request.headers().getFirst(DeadlineUtil.HEADER));
+            return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+        };
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.bhuang.webflux.pattern.common.deadline;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlineWebFilterTest {
+
+    private final DeadlineWebFilter filter = new DeadlineWebFilter();
+    // the remaining budget the rest of the chain saw in its Context
+    private final AtomicReference<Optional<Duration>> remaining = new AtomicReference<>();
+    private final WebFilterChain chain = exchange -> Mono.deferContextual(ctx -> {
+        this.remaining.set(DeadlineUtil.remaining(ctx));
+        return Mono.empty();
+    });
+
+    @Test
+    void headerBecomesTheDeadlineInTheContext(){
+        this.filter(" 500 ");
+        var budget = this.remaining.get().orElseThrow();
+        assertTrue(budget.compareTo(Duration.ofMillis(500)) <= 0 && budget.compareTo(Duration.ofMillis(400)) > 0, budget::toString);
+    }
+
+    @Test
+    void withoutHeaderThereIsNoDeadline(){
+        this.filter(null);
+        assertEquals(Optional.empty(), this.remaining.get());
+    }
+
+    @Test
+    void invalidHeaderIsIgnored(){
+        this.filter("soon");
+        assertEquals(Optional.empty(), this.remaining.get());
+    }
+
+    private void filter(String header){
+        var request = MockServerHttpRequest.get("/product/1");
+        if(Objects.nonNull(header))
+            request.header(DeadlineUtil.HEADER, header);
+        StepVerifier.create(this.filter.filter(MockServerWebExchange.from(request), this.chain)).verifyComplete();
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.bhuang.webflux.pattern.common.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedJournalTest {
+
+    // 12 bytes of header + 20 bytes of payload: exactly two records per segment
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void cursorsReadAndCommitIndependently() throws IOException {
+        try (var journal = this.journal(4)) {
+            var refunds = journal.cursor("refunds");
+            var restores = journal.cursor("restores");
+            this.append(journal, "order-1", "order-2", "order-3");
+            assertEquals(3, refunds.pending());
+
+            var read = refunds.poll(2);
+            assertEquals(List.of("order-1", "order-2"), this.payloads(read));
+            refunds.commit(read.get(1));
+            assertEquals(1, refunds.pending());
+            assertEquals(List.of("order-3"), this.payloads(refunds.poll(10)));
+
+            assertEquals(3, restores.pending());
+            assertEquals(List.of("order-1", "order-2", "order-3"), this.payloads(restores.poll(10)));
+        }
+    }
+
+    @Test
+    void rewindReadsAgainFromTheLastCommit() throws IOException {
+        try (var journal = this.journal(4)) {
+            var cursor = journal.cursor("refunds");
+            this.append(journal, "order-1", "order-2", "order-3");
+            cursor.commit(cursor.poll(1).get(0));
+            cursor.poll(10);
+            cursor.rewind();
+            assertEquals(List.of("order-2", "order-3"), this.payloads(cursor.poll(10)));
+        }
+    }
+
+    @Test
+    void pollStopsAtTheLimit() throws IOException {
+        try (var journal = this.journal(4)) {
+            var shipping = journal.cursor("shipping");
+            var payment = journal.cursor("payment");
+            this.append(journal, "order-1", "order-2", "order-3");
+            shipping.commit(shipping.poll(1).get(0));
+            assertEquals(List.of("order-1"), this.payloads(payment.poll(10, shipping.committed())));
+            assertEquals(List.of(), payment.poll(10, shipping.committed()));
+        }
+    }
+
+    @Test
+    void restartResumesAtTheCheckpointAndAfterTheLastRecord() throws IOException {
+        try (var journal = this.journal(4)) {
+            var cursor = journal.cursor("refunds");
+            this.append(journal, "order-1", "order-2", "order-3");
+            cursor.commit(cursor.poll(1).get(0));
+        }
+        try (var journal = this.journal(4)) {
+            var cursor = journal.cursor("refunds");
+            assertEquals(2, cursor.pending());
+            this.append(journal, "order-4");
+            assertEquals(List.of("order-2", "order-3", "order-4"), this.payloads(cursor.poll(10)));
+        }
+    }
+
+    @Test
+    void fullJournalRejectsAppendsUntilACommitFreesASegment() throws IOException {
+        try (var journal = this.journal(2)) {
+            var cursor = journal.cursor("refunds");
+            this.append(journal, "order-1", "order-2", "order-3", "order-4");
+            assertFalse(journal.append(this.payload("order-5")));
+
+            var read = cursor.poll(2);
+            cursor.commit(read.get(1));
+            assertTrue(journal.append(this.payload("order-5")));
+            assertEquals(List.of("order-3", "order-4", "order-5"), this.payloads(cursor.poll(10)));
+        }
+    }
+
+    @Test
+    void segmentsEveryCursorCommittedPastAreDeleted() throws IOException {
+        try (var journal = this.journal(4)) {
+            var refunds = journal.cursor("refunds");
+            var restores = journal.cursor("restores");
+            this.append(journal, "order-1", "order-2", "order-3", "order-4", "order-5");
+            assertEquals(3, this.segmentFiles());
+
+            var read = refunds.poll(4);
+            refunds.commit(read.get(3));
+            // restores has not read anything yet
+            assertEquals(3, this.segmentFiles());
+
+            read = restores.poll(2);
+            restores.commit(read.get(1));
+            assertEquals(2, this.segmentFiles());
+            assertEquals(List.of("order-3", "order-4", "order-5"), this.payloads(restores.poll(10)));
+        }
+    }
+
+    @Test
+    void oldestPendingIsTheAppendTimeOfTheFirstUncommittedRecord() throws IOException {
+        try (var journal = this.journal(4)) {
+            var cursor = journal.cursor("refunds");
+            assertTrue(cursor.oldestPending().isEmpty());
+            var before = System.currentTimeMillis();
+            this.append(journal, "order-1");
+            var oldest = cursor.oldestPending().orElseThrow();
+            assertTrue(oldest >= before && oldest <= System.currentTimeMillis());
+            cursor.commit(cursor.poll(1).get(0));
+            assertTrue(cursor.oldestPending().isEmpty());
+        }
+    }
+
+    @Test
+    void recordLargerThanASegmentIsRejected() throws IOException {
+        try (var journal = this.journal(4)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(new byte[SEGMENT_SIZE]));
+            assertThrows(IllegalArgumentException.class, () -> journal.append(new byte[0]));
+        }
+    }
+
+    private MappedJournal journal(int maxSegments) throws IOException {
+        return new MappedJournal(this.directory, SEGMENT_SIZE, maxSegments);
+    }
+
+    private void append(MappedJournal journal, String... orders){
+        for (var order : orders)
+            assertTrue(journal.append(this.payload(order)));
+    }
+
+    // padded to 20 bytes
+    private byte[] payload(String order){
+        return String.format("%-20s", order).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private List<String> payloads(List<MappedJournal.Record> records){
+        return records.stream().map(r -> new String(r.payload(), StandardCharsets.US_ASCII).trim()).toList();
+    }
+
+    private long segmentFiles() throws IOException {
+        try (var files = Files.list(this.directory)) {
+            return files.filter(f -> f.toString().endsWith(".segment")).count();
+        }
+    }
+
+}
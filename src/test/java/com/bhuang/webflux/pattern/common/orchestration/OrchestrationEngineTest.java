@@ -0,0 +1,173 @@
+package com.bhuang.webflux.pattern.common.orchestration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrchestrationEngineTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void independentStepsRunInParallelAndDependentsGetTheMergedContext(){
+        var payment = new Payment(this.done("Payment", Duration.ofMillis(300)));
+        var inventory = new Inventory(this.done("Inventory", Duration.ofMillis(300)));
+        // sees what both prerequisites returned
+        var shipping = new Shipping(ctx -> Mono.just(this.with(ctx, "Shipping", ctx.get("Payment") + "+" + ctx.get("Inventory"))),
+                                    Payment.class, Inventory.class);
+        StepVerifier.create(this.engine(payment, inventory, shipping).run(Map.of("order", "1")))
+                    .assertNext(result -> {
+                        assertTrue(result.success());
+                        assertEquals(Set.of(payment, inventory, shipping), result.succeeded());
+                        assertEquals(Map.of("order", "1", "Payment", "ok", "Inventory", "ok", "Shipping", "ok+ok"), result.ctx());
+                        assertTrue(result.latency().compareTo(Duration.ofMillis(550)) < 0, result.latency().toString());
+                    })
+                    .verifyComplete();
+    }
+
+    @Test
+    void failedStepSkipsItsDependentsOnly(){
+        var shippingRuns = new AtomicInteger();
+        var payment = new Payment(ctx -> Mono.error(new IllegalStateException("declined")));
+        var inventory = new Inventory(this.done("Inventory", Duration.ZERO));
+        var shipping = new Shipping(ctx -> {
+            shippingRuns.incrementAndGet();
+            return Mono.just(this.with(ctx, "Shipping", "ok"));
+        }, Payment.class);
+        StepVerifier.create(this.engine(payment, inventory, shipping).run(Map.of()))
+                    .assertNext(result -> {
+                        assertFalse(result.success());
+                        assertEquals(Set.of(inventory), result.succeeded());
+                        assertEquals(Map.of("Inventory", "ok"), result.ctx());
+                    })
+                    .verifyComplete();
+        assertEquals(0, shippingRuns.get());
+    }
+
+    @Test
+    void emptyOrUnsuccessfulResultIsAFailure(){
+        var payment = new Payment(ctx -> Mono.empty());
+        // returns a context without its key, isSuccess is false
+        var inventory = new Inventory(Mono::just);
+        StepVerifier.create(this.engine(payment, inventory).run(Map.of()))
+                    .assertNext(result -> {
+                        assertFalse(result.success());
+                        assertTrue(result.succeeded().isEmpty());
+                    })
+                    .verifyComplete();
+        assertEquals(2, this.registry.get("orchestration.step.duration").tag("outcome", "FAILED").timers().size());
+    }
+
+    @Test
+    void criticalPathIsTheChainTheRunWaitedFor(){
+        var payment = new Payment(this.done("Payment", Duration.ofMillis(50)));
+        var inventory = new Inventory(this.done("Inventory", Duration.ofMillis(300)));
+        var shipping = new Shipping(this.done("Shipping", Duration.ofMillis(50)), Payment.class, Inventory.class);
+        StepVerifier.create(this.engine(payment, inventory, shipping).run(Map.of()))
+                    .assertNext(result -> assertEquals(List.of(inventory, shipping), result.criticalPath()))
+                    .verifyComplete();
+        var timer = this.registry.get("orchestration.critical.path")
+                                 .tag("engine", "test")
+                                 .tag("path", "Inventory>Shipping")
+                                 .tag("outcome", "success")
+                                 .timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void stepRunsOnceEvenWithSeveralDependents(){
+        var paymentRuns = new AtomicInteger();
+        var payment = new Payment(ctx -> {
+            paymentRuns.incrementAndGet();
+            return Mono.just(this.with(ctx, "Payment", "ok"));
+        });
+        var inventory = new Inventory(this.done("Inventory", Duration.ZERO), Payment.class);
+        var shipping = new Shipping(this.done("Shipping", Duration.ZERO), Payment.class);
+        StepVerifier.create(this.engine(payment, inventory, shipping).run(Map.of()))
+                    .assertNext(result -> assertTrue(result.success()))
+                    .verifyComplete();
+        assertEquals(1, paymentRuns.get());
+    }
+
+    private OrchestrationEngine<Map<String, String>, TestStep> engine(TestStep... steps){
+        return new OrchestrationEngine<>("test", new StepGraph<>(List.of(steps)), this::merge, this.registry);
+    }
+
+    private Map<String, String> merge(Map<String, String> input, List<Map<String, String>> returned){
+        var merged = new HashMap<>(input);
+        returned.forEach(merged::putAll);
+        return Map.copyOf(merged);
+    }
+
+    // the step succeeded: its name -> "ok" after the delay
+    private Function<Map<String, String>, Mono<Map<String, String>>> done(String step, Duration delay){
+        return ctx -> Mono.delay(delay).thenReturn(this.with(ctx, step, "ok"));
+    }
+
+    private Map<String, String> with(Map<String, String> ctx, String key, String value){
+        var copy = new HashMap<>(ctx);
+        copy.put(key, value);
+        return Map.copyOf(copy);
+    }
+
+    // immutable context, a step succeeded when the context it returned has its name in it
+    private abstract static class TestStep implements Step<Map<String, String>> {
+
+        private final Function<Map<String, String>, Mono<Map<String, String>>> create;
+        private final Set<Class<?>> prerequisites;
+
+        TestStep(Function<Map<String, String>, Mono<Map<String, String>>> create, Class<?>... prerequisites) {
+            this.create = create;
+            this.prerequisites = Set.of(prerequisites);
+        }
+
+        @Override
+        public Mono<Map<String, String>> create(Map<String, String> ctx) {
+            return this.create.apply(ctx);
+        }
+
+        @Override
+        public Predicate<Map<String, String>> isSuccess() {
+            return ctx -> ctx.containsKey(this.name());
+        }
+
+        @Override
+        public Set<Class<?>> prerequisites() {
+            return this.prerequisites;
+        }
+
+    }
+
+    private static class Payment extends TestStep {
+        Payment(Function<Map<String, String>, Mono<Map<String, String>>> create, Class<?>... prerequisites) {
+            super(create, prerequisites);
+        }
+    }
+
+    private static class Inventory extends TestStep {
+        Inventory(Function<Map<String, String>, Mono<Map<String, String>>> create, Class<?>... prerequisites) {
+            super(create, prerequisites);
+        }
+    }
+
+    private static class Shipping extends TestStep {
+        Shipping(Function<Map<String, String>, Mono<Map<String, String>>> create, Class<?>... prerequisites) {
+            super(create, prerequisites);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.bhuang.webflux.pattern.common.orchestration;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StepGraphTest {
+
+    @Test
+    void everyStepComesAfterItsPrerequisites(){
+        var shipping = new Shipping(Payment.class, Inventory.class);
+        var payment = new Payment();
+        var inventory = new Inventory(Payment.class);
+        var graph = new StepGraph<>(List.of(shipping, payment, inventory));
+        assertEquals(List.of(payment, inventory, shipping), graph.topologicalOrder());
+        assertEquals(Set.of(payment, inventory), graph.prerequisites(shipping));
+        assertEquals(Set.of(inventory, shipping), graph.dependents(payment));
+        assertTrue(graph.dependents(shipping).isEmpty());
+    }
+
+    @Test
+    void cycleIsRejected(){
+        var steps = List.<TestStep>of(new Payment(Shipping.class), new Inventory(), new Shipping(Payment.class));
+        var e = assertThrows(IllegalStateException.class, () -> new StepGraph<>(steps));
+        assertEquals("steps have a dependency cycle: [Payment, Shipping]", e.getMessage());
+    }
+
+    @Test
+    void selfDependencyIsACycle(){
+        var steps = List.<TestStep>of(new Payment(Payment.class));
+        assertThrows(IllegalStateException.class, () -> new StepGraph<>(steps));
+    }
+
+    @Test
+    void prerequisiteThatIsNotAStepIsRejected(){
+        var steps = List.<TestStep>of(new Payment(), new Shipping(Inventory.class));
+        var e = assertThrows(IllegalStateException.class, () -> new StepGraph<>(steps));
+        assertEquals("Shipping requires Inventory which is not a step", e.getMessage());
+    }
+
+    private abstract static class TestStep implements Step<Object> {
+
+        private final Set<Class<?>> prerequisites;
+
+        TestStep(Class<?>... prerequisites) {
+            this.prerequisites = Set.of(prerequisites);
+        }
+
+        @Override
+        public Mono<Object> create(Object ctx) {
+            return Mono.just(ctx);
+        }
+
+        @Override
+        public Predicate<Object> isSuccess() {
+            return ctx -> true;
+        }
+
+        @Override
+        public Set<Class<?>> prerequisites() {
+            return this.prerequisites;
+        }
+
+    }
+
+    private static class Payment extends TestStep {
+        Payment(Class<?>... prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+    private static class Inventory extends TestStep {
+        Inventory(Class<?>... prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+    private static class Shipping extends TestStep {
+        Shipping(Class<?>... prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+}
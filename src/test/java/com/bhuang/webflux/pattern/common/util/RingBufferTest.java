@@ -0,0 +1,93 @@
+package com.bhuang.webflux.pattern.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo(){
+        assertEquals(2, new RingBuffer<>(1).capacity());
+        assertEquals(8, new RingBuffer<>(8).capacity());
+        assertEquals(16, new RingBuffer<>(9).capacity());
+    }
+
+    @Test
+    void offerFailsWhenFullAndPollReturnsNullWhenEmpty(){
+        var ring = new RingBuffer<Integer>(4);
+        assertNull(ring.poll());
+        for (var i = 0; i < 4; i++)
+            assertTrue(ring.offer(i));
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+    }
+
+    @Test
+    void staysFifoOverManyLaps(){
+        var ring = new RingBuffer<Integer>(4);
+        var offered = 0;
+        var polled = 0;
+        // 3 in, 2 out: the positions wrap around the 4 slots many times, with the ring full on most laps
+        for (var lap = 0; lap < 100; lap++) {
+            for (var i = 0; i < 3; i++)
+                if(ring.offer(offered))
+                    offered++;
+            for (var i = 0; i < 2; i++)
+                assertEquals(polled++, ring.poll());
+        }
+        assertEquals(offered - polled, ring.size());
+        while (polled < offered)
+            assertEquals(polled++, ring.poll());
+        assertNull(ring.poll());
+        assertTrue(offered > 200);
+    }
+
+    @Test
+    void everyElementIsPolledExactlyOnceByConcurrentProducersAndConsumers() throws InterruptedException {
+        var ring = new RingBuffer<Integer>(64);
+        var producers = 4;
+        var perProducer = 5_000;
+        var polled = ConcurrentHashMap.<Integer>newKeySet();
+        var duplicates = new AtomicInteger();
+        var done = new CountDownLatch(producers);
+        var threads = new ArrayList<Thread>();
+        for (var p = 0; p < producers; p++) {
+            var first = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (var i = first; i < first + perProducer; i++)
+                    while (!ring.offer(i))
+                        Thread.yield();
+                done.countDown();
+            }));
+        }
+        for (var c = 0; c < 2; c++) {
+            threads.add(new Thread(() -> {
+                while (done.getCount() > 0 || ring.size() > 0) {
+                    var element = ring.poll();
+                    if(element == null)
+                        Thread.yield();
+                    else if(!polled.add(element))
+                        duplicates.incrementAndGet();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (var thread : threads)
+            thread.join();
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * perProducer, polled.size());
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.bhuang.webflux.pattern.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void keepsTheSmallestBestFirst(){
+        var topK = new TopK<Integer>(3, Comparator.naturalOrder());
+        List.of(5, 1, 9, 3, 7, 2).forEach(topK::offer);
+        assertEquals(List.of(1, 2, 3), topK.snapshot());
+    }
+
+    @Test
+    void offerTellsWhetherTheTopKChanged(){
+        var topK = new TopK<Integer>(2, Comparator.naturalOrder());
+        assertTrue(topK.offer(5));
+        assertTrue(topK.offer(3));
+        assertFalse(topK.offer(8));
+        // a tie with the current worst does not change the set either
+        assertFalse(topK.offer(5));
+        assertTrue(topK.offer(4));
+        assertEquals(List.of(3, 4), topK.snapshot());
+    }
+
+    @Test
+    void fewerElementsThanK(){
+        var topK = new TopK<Integer>(5, Comparator.naturalOrder());
+        List.of(4, 2).forEach(topK::offer);
+        assertEquals(List.of(2, 4), topK.snapshot());
+    }
+
+    @Test
+    void matchesSortingEverything(){
+        var random = new Random(42);
+        var values = random.ints(1_000, 0, 10_000).boxed().toList();
+        var topK = new TopK<Integer>(10, Comparator.reverseOrder());
+        values.forEach(topK::offer);
+        assertEquals(values.stream().sorted(Comparator.reverseOrder()).limit(10).toList(), topK.snapshot());
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.bhuang.webflux.pattern.sec01.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReactiveCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // key -> how many times it was loaded, the loaded value is "<key>-<load count>"
+    private final Map<Integer, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void clear(){
+        this.loads.clear();
+    }
+
+    @Test
+    void hitDoesNotReload(){
+        var cache = this.cache(10, Duration.ofMinutes(1), null);
+        StepVerifier.create(cache.get(1)).expectNext("1-1").verifyComplete();
+        StepVerifier.create(cache.get(1)).expectNext("1-1").verifyComplete();
+        assertEquals(1, this.loads(1));
+        assertEquals(1, this.count("cache.gets", "hit"));
+        assertEquals(1, this.count("cache.gets", "miss"));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad(){
+        var response = Sinks.<String>one();
+        var calls = new AtomicInteger();
+        var cache = new ReactiveCache<Integer, String>("test", 10, v -> Duration.ofMinutes(1), null,
+                                                       key -> { calls.incrementAndGet(); return response.asMono(); },
+                                                       this.registry);
+        var first = cache.get(1).toFuture();
+        var second = cache.get(1).toFuture();
+        response.tryEmitValue("v");
+        assertEquals("v", first.join());
+        assertEquals("v", second.join());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void expiredEntryIsReloaded() throws InterruptedException {
+        var cache = this.cache(10, Duration.ofMillis(50), null);
+        StepVerifier.create(cache.get(1)).expectNext("1-1").verifyComplete();
+        Thread.sleep(100);
+        StepVerifier.create(cache.get(1)).expectNext("1-2").verifyComplete();
+    }
+
+    @Test
+    void staleHitIsServedAndRefreshedInTheBackground() throws InterruptedException {
+        var reload = Sinks.<String>one();
+        var calls = new AtomicInteger();
+        var cache = new ReactiveCache<Integer, String>("test", 10, v -> Duration.ofMinutes(1), Duration.ofMillis(50),
+                                                       key -> calls.incrementAndGet() == 1 ? Mono.just("v1") : reload.asMono(),
+                                                       this.registry);
+        StepVerifier.create(cache.get(1)).expectNext("v1").verifyComplete();
+        Thread.sleep(100);
+        // still the old value, the reload runs behind it
+        StepVerifier.create(cache.get(1)).expectNext("v1").verifyComplete();
+        assertEquals(2, calls.get());
+        reload.tryEmitValue("v2");
+        StepVerifier.create(cache.get(1)).expectNext("v2").verifyComplete();
+        assertEquals(2, this.count("cache.gets", "hit"));
+    }
+
+    @Test
+    void emptyAndErrorAreNotCached(){
+        var calls = new AtomicInteger();
+        var cache = new ReactiveCache<Integer, String>("test", 10, v -> Duration.ofMinutes(1), null,
+                                                       key -> calls.incrementAndGet() == 1
+                                                               ? Mono.error(new IllegalStateException())
+                                                               : Mono.empty(),
+                                                       this.registry);
+        StepVerifier.create(cache.get(1)).verifyError(IllegalStateException.class);
+        StepVerifier.create(cache.get(1)).verifyComplete();
+        StepVerifier.create(cache.get(1)).verifyComplete();
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void valueWithoutTtlIsNotCached(){
+        var cache = this.cache(10, Duration.ZERO, null);
+        StepVerifier.create(cache.get(1)).expectNext("1-1").verifyComplete();
+        StepVerifier.create(cache.get(1)).expectNext("1-2").verifyComplete();
+    }
+
+    @Test
+    void entriesOverMaximumSizeAreEvicted(){
+        var cache = this.cache(10, Duration.ofMinutes(1), null);
+        for (var key = 0; key < 11; key++)
+            cache.get(key).block();
+        assertEquals(1, this.count("cache.evictions", null));
+        assertEquals(10, this.registry.get("cache.size").gauge().value());
+    }
+
+    @Test
+    void failedRefreshKeepsTheCachedValueAndIsCounted() throws InterruptedException {
+        var calls = new AtomicInteger();
+        var cache = new ReactiveCache<Integer, String>("test", 10, v -> Duration.ofMinutes(1), Duration.ofMillis(50),
+                                                       key -> calls.incrementAndGet() == 1
+                                                               ? Mono.just("v")
+                                                               : Mono.error(new IllegalStateException()),
+                                                       this.registry);
+        StepVerifier.create(cache.get(1)).expectNext("v").verifyComplete();
+        Thread.sleep(100);
+        StepVerifier.create(cache.get(1)).expectNext("v").verifyComplete();
+        // the entry is still stale, the next hit tries again
+        StepVerifier.create(cache.get(1)).expectNext("v").verifyComplete();
+        assertEquals(2, this.count("cache.refreshes", "failure"));
+        assertEquals(2, this.registry.get("cache.load.duration").tag("result", "failure").timer().count());
+    }
+
+    @Test
+    void invalidatedEntryIsReloaded(){
+        var cache = this.cache(10, Duration.ofMinutes(1), null);
+        cache.get(1).block();
+        cache.invalidate(1);
+        StepVerifier.create(cache.get(1)).expectNext("1-2").verifyComplete();
+    }
+
+    private ReactiveCache<Integer, String> cache(int maximumSize, Duration ttl, Duration refreshAfterWrite){
+        Function<Integer, Mono<String>> loader = key -> Mono.fromSupplier(
+                () -> key + "-" + this.loads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet());
+        return new ReactiveCache<>("test", maximumSize, v -> ttl, refreshAfterWrite, loader, this.registry);
+    }
+
+    private int loads(int key){
+        return this.loads.getOrDefault(key, new AtomicInteger()).get();
+    }
+
+    private double count(String name, String result){
+        var search = this.registry.get(name).tag("cache", "test");
+        return (Objects.isNull(result) ? search : search.tag("result", result)).counter().count();
+    }
+
+}
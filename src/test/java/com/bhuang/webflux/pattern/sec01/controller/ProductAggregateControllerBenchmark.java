@@ -0,0 +1,106 @@
+package com.bhuang.webflux.pattern.sec01.controller;
+
+import com.bhuang.webflux.pattern.WebfluxPatternsApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+p99 of GET /sec01/product/{id}?fields=price with and without the product cache.
+the app runs with sec=sec01 against a local stub of the product / promotion services:
+ - product answers in 5ms, 2% of the calls take 50ms
+ - promotion answers in 5ms and is cached in both runs
+fields=price leaves the review service out, so product is the only leg that differs between the runs.
+"uncached" sets sec01.product.cache.expire-after-write=0s: every value has a ttl of zero and is never kept.
+run: the main method, or mvn test-compile and then this class with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class ProductAggregateControllerBenchmark {
+
+    private static final int PRODUCTS = 100;
+
+    @Param({"cached", "uncached"})
+    private String productCache;
+
+    private DisposableServer stub;
+    private ConfigurableApplicationContext app;
+    private WebClient client;
+
+    @Setup
+    public void setup(){
+        this.stub = HttpServer.create()
+                              .port(0)
+                              .route(routes -> routes
+                                      .get("/sec01/product/{id}", (request, response) -> response
+                                              .header("Content-Type", "application/json")
+                                              .sendString(this.delayed(ThreadLocalRandom.current().nextInt(50) == 0 ? 50 : 5,
+                                                      "{\"id\":" + request.param("id") + ",\"category\":\"c\",\"description\":\"d\",\"price\":100}")))
+                                      .get("/sec01/promotion/{id}", (request, response) -> response
+                                              .header("Content-Type", "application/json")
+                                              .sendString(this.delayed(5,
+                                                      "{\"id\":" + request.param("id") + ",\"type\":\"p\",\"discount\":10.0}"))))
+                              .bindNow();
+        var downstream = "http://localhost:" + this.stub.port() + "/sec01/";
+        this.app = new SpringApplicationBuilder(WebfluxPatternsApplication.class)
+                .run("--sec=sec01",
+                     "--server.port=0",
+                     "--logging.level.root=warn",
+                     "--sec01.product.service=" + downstream + "product/",
+                     "--sec01.promotion.service=" + downstream + "promotion/",
+                     "--sec01.product.cache.expire-after-write=" + ("cached".equals(this.productCache) ? "10m" : "0s"));
+        this.client = WebClient.create("http://localhost:" + this.app.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @TearDown
+    public void tearDown(){
+        this.app.close();
+        this.stub.disposeNow();
+    }
+
+    @Benchmark
+    public String aggregate(){
+        return this.client.get()
+                          .uri("/sec01/product/{id}?fields=price", ThreadLocalRandom.current().nextInt(PRODUCTS))
+                          .retrieve()
+                          .bodyToMono(String.class)
+                          .block();
+    }
+
+    private Mono<String> delayed(int millis, String body){
+        return Mono.delay(Duration.ofMillis(millis)).thenReturn(body);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProductAggregateControllerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
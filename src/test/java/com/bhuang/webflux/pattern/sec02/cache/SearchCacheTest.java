@@ -0,0 +1,123 @@
+package com.bhuang.webflux.pattern.sec02.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearchCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentSubscriberReplaysWhatArrivedThenGetsTheRest(){
+        var results = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var cache = this.cache(10, Duration.ofMinutes(1), key -> results.asFlux());
+        var joined = new CompletableFuture<List<String>>();
+        StepVerifier.create(cache.get("ATL-LAS"))
+                    .then(() -> results.tryEmitNext("a"))
+                    .expectNext("a")
+                    // joins while the search is still running
+                    .then(() -> cache.get("ATL-LAS").collectList().subscribe(joined::complete))
+                    .then(() -> results.tryEmitNext("b"))
+                    .expectNext("b")
+                    .then(results::tryEmitComplete)
+                    .verifyComplete();
+        assertEquals(List.of("a", "b"), joined.join());
+        assertEquals(1, this.loads.get());
+        assertEquals(1, this.count("join"));
+        // 3 downstream calls per load, saved once for the joiner
+        assertEquals(3, this.registry.get("cache.calls.saved").counter().count());
+    }
+
+    @Test
+    void completedSearchIsServedUntilTtl() throws InterruptedException {
+        var cache = this.cache(10, Duration.ofMillis(100), this::search);
+        StepVerifier.create(cache.get("ATL-LAS")).expectNext("ATL-LAS-1").verifyComplete();
+        StepVerifier.create(cache.get("ATL-LAS")).expectNext("ATL-LAS-1").verifyComplete();
+        assertEquals(1, this.count("hit"));
+        Thread.sleep(150);
+        StepVerifier.create(cache.get("ATL-LAS")).expectNext("ATL-LAS-2").verifyComplete();
+        assertEquals(2, this.count("miss"));
+    }
+
+    @Test
+    void erroredSearchIsNotCached(){
+        var cache = this.cache(10, Duration.ofMinutes(1),
+                               key -> this.loads.get() == 1 ? Flux.error(new IllegalStateException()) : Flux.just("ok"));
+        StepVerifier.create(cache.get("ATL-LAS")).verifyError(IllegalStateException.class);
+        StepVerifier.create(cache.get("ATL-LAS")).expectNext("ok").verifyComplete();
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    void cancelledSubscriberDoesNotCancelTheSearch(){
+        var results = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var cancelled = new AtomicInteger();
+        var cache = this.cache(10, Duration.ofMinutes(1), key -> results.asFlux().doOnCancel(cancelled::incrementAndGet));
+        StepVerifier.create(cache.get("ATL-LAS").take(1))
+                    .then(() -> results.tryEmitNext("a"))
+                    .expectNext("a")
+                    .verifyComplete();
+        results.tryEmitNext("b");
+        results.tryEmitComplete();
+        StepVerifier.create(cache.get("ATL-LAS")).expectNext("a", "b").verifyComplete();
+        assertEquals(0, cancelled.get());
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    void completedSearchesOverMaximumSizeAreEvicted(){
+        var cache = this.cache(10, Duration.ofMinutes(1), this::search);
+        for (var i = 0; i < 11; i++)
+            cache.get("route-" + i).blockLast();
+        assertEquals(1, this.registry.get("cache.evictions").counter().count());
+        assertEquals(10, this.registry.get("cache.size").gauge().value());
+    }
+
+    @Test
+    void inFlightSearchIsNotEvicted(){
+        var results = Sinks.many().unicast().<String>onBackpressureBuffer();
+        var cache = this.cache(1, Duration.ofMinutes(1),
+                               key -> "ATL-LAS".equals(key) ? results.asFlux() : this.search(key));
+        StepVerifier.create(cache.get("ATL-LAS"))
+                    .then(() -> {
+                        for (var i = 0; i < 3; i++)
+                            cache.get("route-" + i).blockLast();
+                    })
+                    .then(() -> cache.get("ATL-LAS").subscribe())
+                    .then(() -> results.tryEmitNext("a"))
+                    .expectNext("a")
+                    .then(results::tryEmitComplete)
+                    .verifyComplete();
+        assertEquals(1, this.count("join"));
+        assertEquals(4, this.loads.get());
+    }
+
+    private SearchCache<String, String> cache(int maximumSize, Duration ttl, Function<String, Flux<String>> search){
+        return new SearchCache<>("test", maximumSize, ttl, key -> {
+            this.loads.incrementAndGet();
+            return search.apply(key);
+        }, key -> 3, this.registry);
+    }
+
+    // one result per search, "<key>-<load count>"
+    private Flux<String> search(String key){
+        return Flux.just(key + "-" + this.loads.get());
+    }
+
+    private double count(String result){
+        return this.registry.get("cache.gets").tag("result", result).counter().count();
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.bhuang.webflux.pattern.sec02.controller;
+
+import com.bhuang.webflux.pattern.WebfluxPatternsApplication;
+import com.sun.management.OperatingSystemMXBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+per-item vs batched SSE for GET /sec02/flights/ATL/LAS.
+the app runs with sec=sec02 against a local stub where each of the 3 airlines returns FLIGHTS_PER_AIRLINE flights.
+the search cache serves every search after the first one, so what is measured is encoding and writing the stream.
+the provider cutoff is raised to 3s and the cache ttl to 1h, so a loaded machine can not cache a cut-off search
+and every search streams the same flights.
+reported:
+ - searches/s, by JMH (every search streams 3 * FLIGHTS_PER_AIRLINE flights, as that many events or as frames)
+ - cpu time and bytes per search, printed at the end of each trial. the cpu time is the whole process:
+   the app and this client, which only counts the bytes it reads
+run: the main method, or mvn test-compile and then this class with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(4)
+@Fork(1)
+public class FlightsControllerBenchmark {
+
+    private static final int FLIGHTS_PER_AIRLINE = 300;
+
+    @Param({"per-item", "batched"})
+    private String stream;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private long cpuAtStart;
+    private DisposableServer stub;
+    private ConfigurableApplicationContext app;
+    private WebClient client;
+    private String uri;
+
+    @Setup
+    public void setup(){
+        this.stub = HttpServer.create()
+                              .port(0)
+                              .route(routes -> routes
+                                      .get("/sec02/delta/{from}/{to}", (request, response) -> this.flights(response, "DELTA"))
+                                      .get("/sec02/jetblue/{from}/{to}", (request, response) -> this.flights(response, "JETBLUE"))
+                                      .post("/sec02/frontier/", (request, response) -> this.flights(response, "FRONTIER")))
+                              .bindNow();
+        var downstream = "http://localhost:" + this.stub.port() + "/sec02/";
+        this.app = new SpringApplicationBuilder(WebfluxPatternsApplication.class)
+                .run("--sec=sec02",
+                     "--server.port=0",
+                     "--logging.level.root=warn",
+                     "--sec02.delta.service=" + downstream + "delta/",
+                     "--sec02.jetblue.service=" + downstream + "jetblue/",
+                     "--sec02.frontier.service=" + downstream + "frontier/",
+                     "--sec02.provider.cutoff.minimum=3s",
+                     "--sec02.search.cache.ttl=1h");
+        this.client = WebClient.create("http://localhost:" + this.app.getEnvironment().getProperty("local.server.port"));
+        this.uri = "batched".equals(this.stream) ? "/sec02/flights/ATL/LAS?batchSize=100&batchMillis=50" : "/sec02/flights/ATL/LAS";
+        this.cpuAtStart = this.cpuNanos();
+    }
+
+    @TearDown
+    public void tearDown(){
+        var searches = Math.max(1, this.searches.get());
+        System.out.println();
+        System.out.printf("%s: %.3f ms cpu, %d bytes per search%n",
+                          this.stream, (this.cpuNanos() - this.cpuAtStart) / 1e6 / searches, this.bytes.get() / searches);
+        this.app.close();
+        this.stub.disposeNow();
+    }
+
+    @Benchmark
+    public long search(){
+        var read = this.client.get()
+                              .uri(this.uri)
+                              .accept(MediaType.TEXT_EVENT_STREAM)
+                              .retrieve()
+                              .bodyToFlux(DataBuffer.class)
+                              .map(buffer -> {
+                                  var size = buffer.readableByteCount();
+                                  DataBufferUtils.release(buffer);
+                                  return (long) size;
+                              })
+                              .reduce(0L, Long::sum)
+                              .block();
+        this.searches.incrementAndGet();
+        this.bytes.addAndGet(read);
+        return read;
+    }
+
+    private Publisher<Void> flights(HttpServerResponse response, String airline){
+        var body = IntStream.range(0, FLIGHTS_PER_AIRLINE)
+                            .mapToObj(i -> "{\"airline\":\"" + airline + "\",\"from\":\"ATL\",\"to\":\"LAS\",\"price\":" + (100 + i)
+                                           + ",\"date\":\"2024-12-" + (10 + i % 20) + "\"}")
+                            .collect(Collectors.joining(",", "[", "]"));
+        return response.header("Content-Type", "application/json").sendString(Mono.just(body));
+    }
+
+    private long cpuNanos(){
+        return ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FlightsControllerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
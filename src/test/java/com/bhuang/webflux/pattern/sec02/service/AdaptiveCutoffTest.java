@@ -0,0 +1,61 @@
+package com.bhuang.webflux.pattern.sec02.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveCutoffTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void cutoffIsTheMaximumUntilEnoughSearchesWereSeen(){
+        var cutoff = this.cutoff(Duration.ofMillis(10), Duration.ofSeconds(5));
+        this.search(cutoff, 19, Flux.just(1));
+        assertEquals(Duration.ofSeconds(5), cutoff.cutoff());
+        // the searches took next to nothing, so the cutoff is clamped to the minimum
+        this.search(cutoff, 1, Flux.just(1));
+        assertEquals(Duration.ofMillis(10), cutoff.cutoff());
+        assertEquals(10, this.registry.get("sec02.provider.cutoff").gauge().value());
+    }
+
+    @Test
+    void cutoffFollowsTheObservedCompletionTimes(){
+        var cutoff = this.cutoff(Duration.ofMillis(1), Duration.ofSeconds(5));
+        this.search(cutoff, 20, Flux.just(1).delaySubscription(Duration.ofMillis(50)));
+        var fast = cutoff.cutoff();
+        assertTrue(fast.compareTo(Duration.ofMillis(50)) >= 0 && fast.compareTo(Duration.ofSeconds(1)) < 0, fast::toString);
+
+        // the provider slows down: its searches are cut off, recorded as twice the cutoff, and the cutoff moves up
+        // (the percentile is recomputed every 100 searches)
+        this.search(cutoff, 100, Flux.just(1).delaySubscription(Duration.ofSeconds(1)));
+        assertEquals(100, this.registry.get("sec02.provider.cutoffs").counter().count());
+        assertTrue(cutoff.cutoff().compareTo(fast) > 0, () -> cutoff.cutoff() + " <= " + fast);
+    }
+
+    @Test
+    void cutoffIsClampedToTheMaximum(){
+        var cutoff = this.cutoff(Duration.ofMillis(1), Duration.ofMillis(100));
+        // cut off at the maximum and recorded as twice that, capped
+        this.search(cutoff, 20, Flux.never());
+        assertEquals(Duration.ofMillis(100), cutoff.cutoff());
+        assertEquals(20, this.registry.get("sec02.provider.cutoffs").counter().count());
+    }
+
+    private AdaptiveCutoff cutoff(Duration minimum, Duration maximum){
+        return new AdaptiveCutoff("test", 0.5, minimum, maximum, this.registry);
+    }
+
+    // count searches at the same time, each returning results
+    private void search(AdaptiveCutoff cutoff, int count, Flux<Integer> results){
+        Flux.range(0, count)
+            .flatMap(i -> cutoff.apply(results))
+            .blockLast(Duration.ofSeconds(10));
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.bhuang.webflux.pattern.sec02.service;
+
+import com.bhuang.webflux.pattern.sec02.dto.FlightPriceChange;
+import com.bhuang.webflux.pattern.sec02.dto.FlightResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FlightWatchServiceTest {
+
+    private static final Duration INTERVAL = Duration.ofSeconds(30);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // every search returns the same flight, 1 more expensive than the search before
+    private final AtomicInteger searches = new AtomicInteger();
+    private VirtualTimeScheduler scheduler;
+    private FlightWatchService service;
+
+    @BeforeEach
+    void setUp(){
+        this.scheduler = VirtualTimeScheduler.getOrSet();
+        var searchService = mock(FlightSearchService.class);
+        when(searchService.searchNow("ATL", "LAS")).thenAnswer(invocation -> Flux.just(this.flight(100 + this.searches.getAndIncrement())));
+        this.service = new FlightWatchService(INTERVAL, this.registry);
+        ReflectionTestUtils.setField(this.service, "searchService", searchService);
+    }
+
+    @AfterEach
+    void tearDown(){
+        VirtualTimeScheduler.reset();
+    }
+
+    @Test
+    void lateWatcherGetsTheSnapshotAndTheLoopOutlivesTheFirstWatcher(){
+        var first = new CopyOnWriteArrayList<FlightPriceChange>();
+        var second = new CopyOnWriteArrayList<FlightPriceChange>();
+        var firstWatch = this.service.watch("ATL", "LAS").subscribe(first::add);
+        this.scheduler.advanceTimeBy(INTERVAL);
+        assertEquals(List.of(this.added(100), this.changed(101, 100)), first);
+
+        var secondWatch = this.service.watch("ATL", "LAS").subscribe(second::add);
+        assertEquals(List.of(this.added(101)), second);
+        firstWatch.dispose();
+        this.scheduler.advanceTimeBy(INTERVAL);
+        assertEquals(List.of(this.added(101), this.changed(102, 101)), second);
+        // one loop for both watchers
+        assertEquals(3, this.searches.get());
+        assertEquals(1, this.routes());
+
+        secondWatch.dispose();
+        assertEquals(0, this.routes());
+    }
+
+    @Test
+    void watcherComingBackAfterTheLastOneLeftStartsANewLoop(){
+        var first = new CopyOnWriteArrayList<FlightPriceChange>();
+        this.service.watch("ATL", "LAS").subscribe(first::add).dispose();
+        assertEquals(List.of(this.added(100)), first);
+        assertEquals(0, this.routes());
+        this.scheduler.advanceTimeBy(INTERVAL.multipliedBy(2));
+        assertEquals(1, this.searches.get());
+
+        // the new loop registers itself again, and is diffed from scratch
+        var again = new CopyOnWriteArrayList<FlightPriceChange>();
+        var watch = this.service.watch("ATL", "LAS").subscribe(again::add);
+        assertEquals(1, this.routes());
+        this.scheduler.advanceTimeBy(INTERVAL);
+        assertEquals(List.of(this.added(101), this.changed(102, 101)), again);
+
+        watch.dispose();
+        assertEquals(0, this.routes());
+    }
+
+    @Test
+    void resubscribingTheSameWatchRegistersItsLoopAgain(){
+        // the watch was assembled while its loop was registered, resubscribing reconnects that same shared loop
+        var watch = this.service.watch("ATL", "LAS");
+        watch.subscribe().dispose();
+        assertEquals(0, this.routes());
+
+        var again = new CopyOnWriteArrayList<FlightPriceChange>();
+        var joined = new CopyOnWriteArrayList<FlightPriceChange>();
+        var first = watch.subscribe(again::add);
+        assertEquals(1, this.routes());
+        // a new watcher finds the reconnected loop instead of starting another one
+        var second = this.service.watch("ATL", "LAS").subscribe(joined::add);
+        assertEquals(2, this.searches.get());
+        assertEquals(List.of(this.added(101)), joined);
+
+        first.dispose();
+        this.scheduler.advanceTimeBy(INTERVAL);
+        assertEquals(List.of(this.added(101), this.changed(102, 101)), joined);
+        second.dispose();
+        assertEquals(0, this.routes());
+    }
+
+    private FlightResult flight(double price){
+        var flight = new FlightResult();
+        flight.setAirline("UNITED");
+        flight.setFrom("ATL");
+        flight.setTo("LAS");
+        flight.setPrice(price);
+        flight.setDate(LocalDate.of(2025, 1, 1));
+        return flight;
+    }
+
+    private FlightPriceChange added(double price){
+        return FlightPriceChange.create(FlightPriceChange.Type.ADDED, this.flight(price), null);
+    }
+
+    private FlightPriceChange changed(double price, double previousPrice){
+        return FlightPriceChange.create(FlightPriceChange.Type.CHANGED, this.flight(price), previousPrice);
+    }
+
+    private double routes(){
+        return this.registry.get("sec02.watch.routes").gauge().value();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.bhuang.webflux.pattern.sec03.dto;
+
+import com.bhuang.webflux.pattern.sec03.util.OrchestrationUtil;
+import lombok.Data;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+one sec03 order through the three orchestrators: the immutable context merged once vs the mutable @Data context
+every orchestrator wrote into (ctx::setXxxResponse, Mono.zip(.., a -> a[0])), kept here as the baseline.
+both build the requests and add three responses the downstream services would have returned, the http calls are
+left out so what is measured is the context itself:
+ - immutable: a copy with the requests, one withXxxResponse copy per orchestrator, one merged copy per order
+ - mutable  : one context, set in place
+scheduler = where the orchestrators complete: immediate (the calling thread) or parallel (other threads, as on
+the netty event loops, where only the immutable one is safely published).
+reported: orders/s by JMH, allocation per order with -prof gc (gc.alloc.rate.norm).
+run: the main method, or mvn test-compile and then this class with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class OrchestrationRequestContextBenchmark {
+
+    @Param({"immediate", "parallel"})
+    private String scheduler;
+
+    private final OrderRequest order = OrderRequest.create(1, 2, 3);
+    private final PaymentResponse payment = PaymentResponse.create(1, "sam", 700, Status.SUCCESS);
+    private final InventoryResponse inventory = InventoryResponse.create(2, 3, 7, Status.SUCCESS);
+    private final ShippingResponse shipping = ShippingResponse.create(UUID.randomUUID(), 3, Status.SUCCESS, "2024-12-20",
+                                                                      Address.create("1 main st", "atlanta", "GA", "30301"));
+    private Scheduler orchestrators;
+
+    @Setup
+    public void setup(){
+        this.orchestrators = "parallel".equals(this.scheduler) ? Schedulers.newParallel("orchestrator", 3) : Schedulers.immediate();
+    }
+
+    @TearDown
+    public void tearDown(){
+        this.orchestrators.dispose();
+    }
+
+    @Benchmark
+    public OrchestrationRequestContext immutable(){
+        var ctx = OrchestrationUtil.buildRequestContext(OrchestrationRequestContext.create(this.order).withProductPrice(100));
+        return Flux.merge(this.orchestrator(() -> ctx.withPaymentResponse(this.payment)),
+                          this.orchestrator(() -> ctx.withInventoryResponse(this.inventory)),
+                          this.orchestrator(() -> ctx.withShippingResponse(this.shipping)))
+                   .collectList()
+                   .map(returned -> OrchestrationRequestContext.merge(ctx, returned))
+                   .block();
+    }
+
+    @Benchmark
+    public MutableContext mutable(){
+        var ctx = new MutableContext();
+        ctx.setOrderRequest(this.order);
+        ctx.setProductPrice(100);
+        ctx.build();
+        return Mono.zip(this.orchestrator(() -> {
+                           ctx.setPaymentResponse(this.payment);
+                           return ctx;
+                       }),
+                       this.orchestrator(() -> {
+                           ctx.setInventoryResponse(this.inventory);
+                           return ctx;
+                       }),
+                       this.orchestrator(() -> {
+                           ctx.setShippingResponse(this.shipping);
+                           return ctx;
+                       }))
+                   .map(a -> a.getT1())
+                   .block();
+    }
+
+    private <T> Mono<T> orchestrator(Supplier<T> response){
+        return Mono.fromSupplier(response).subscribeOn(this.orchestrators);
+    }
+
+    // the context before it was made immutable
+    @Data
+    public static class MutableContext {
+
+        private final UUID orderId = UUID.randomUUID();
+        private OrderRequest orderRequest;
+        private Integer productPrice;
+        private PaymentRequest paymentRequest;
+        private PaymentResponse paymentResponse;
+        private InventoryRequest inventoryRequest;
+        private InventoryResponse inventoryResponse;
+        private ShippingRequest shippingRequest;
+        private ShippingResponse shippingResponse;
+        private Status status;
+
+        // what OrchestrationUtil.buildRequestContext(ctx) did
+        private void build(){
+            this.paymentRequest = PaymentRequest.create(this.orderRequest.getUserId(),
+                                                        this.productPrice * this.orderRequest.getQuantity(), this.orderId);
+            this.inventoryRequest = InventoryRequest.create(this.orderId, this.orderRequest.getProductId(), this.orderRequest.getQuantity());
+            this.shippingRequest = ShippingRequest.create(this.orderRequest.getQuantity(), this.orderRequest.getUserId(), this.orderId);
+        }
+
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrchestrationRequestContextBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
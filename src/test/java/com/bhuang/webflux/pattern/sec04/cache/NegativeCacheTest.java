@@ -0,0 +1,79 @@
+package com.bhuang.webflux.pattern.sec04.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NegativeCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void returnsWhatTheServiceSaidWasLeft(){
+        var cache = this.cache(10, Duration.ofMinutes(1));
+        assertEquals(OptionalInt.empty(), cache.get(1));
+        cache.put(1, 40);
+        assertEquals(OptionalInt.of(40), cache.get(1));
+        // a newer answer replaces the old one
+        cache.put(1, 30);
+        assertEquals(OptionalInt.of(30), cache.get(1));
+        assertEquals(2, this.count("hit"));
+        assertEquals(1, this.count("miss"));
+    }
+
+    @Test
+    void entryExpiresTtlAfterItWasWritten() throws InterruptedException {
+        var cache = this.cache(10, Duration.ofMillis(100));
+        cache.put(1, 40);
+        assertEquals(OptionalInt.of(40), cache.get(1));
+        Thread.sleep(150);
+        assertEquals(OptionalInt.empty(), cache.get(1));
+        assertEquals(0, this.size());
+    }
+
+    @Test
+    void invalidateRemovesTheEntry(){
+        var cache = this.cache(10, Duration.ofMinutes(1));
+        cache.put(1, 40);
+        cache.invalidate(1);
+        assertEquals(OptionalInt.empty(), cache.get(1));
+    }
+
+    @Test
+    void entriesOverMaximumSizeAreEvicted(){
+        var cache = this.cache(10, Duration.ofMinutes(1));
+        for (var i = 0; i < 11; i++)
+            cache.put(i, i);
+        assertEquals(1, this.registry.get("cache.evictions").counter().count());
+        assertEquals(10, this.size());
+    }
+
+    @Test
+    void expiredEntriesAreEvictedFirst() throws InterruptedException {
+        var cache = this.cache(2, Duration.ofMillis(100));
+        cache.put(1, 1);
+        Thread.sleep(150);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        assertEquals(1, this.registry.get("cache.evictions").counter().count());
+        assertEquals(OptionalInt.of(2), cache.get(2));
+        assertEquals(OptionalInt.of(3), cache.get(3));
+    }
+
+    private NegativeCache<Integer> cache(int maximumSize, Duration ttl){
+        return new NegativeCache<>("test", maximumSize, ttl, this.registry);
+    }
+
+    private double count(String result){
+        return this.registry.get("cache.gets").tag("result", result).counter().count();
+    }
+
+    private double size(){
+        return this.registry.get("cache.size").gauge().value();
+    }
+
+}
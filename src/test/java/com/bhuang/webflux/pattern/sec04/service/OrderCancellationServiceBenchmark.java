@@ -0,0 +1,169 @@
+package com.bhuang.webflux.pattern.sec04.service;
+
+import com.bhuang.webflux.pattern.common.journal.MappedJournal;
+import com.bhuang.webflux.pattern.sec04.dto.OrchestrationRequestContext;
+import com.bhuang.webflux.pattern.sec04.dto.OrderRequest;
+import com.bhuang.webflux.pattern.sec04.util.OrchestrationUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+failed orders/s through the cancellation queue: the journal OrderCancellationService uses now vs the in-memory
+multicast sink it replaced.
+every operation hands ORDERS failed sec04 orders to the queue and waits until each of the 3 consumers
+(one per orchestrator) has read them, so the queue never grows past one batch and both sides do the same work:
+ - journal: cancelOrder serializes the context and appends it, every consumer polls batches through its own cursor,
+   reads the contexts back and commits each batch (checkpoint file included)
+ - sink   : tryEmitNext of the context, every consumer subscribes through publishOn on its own thread
+run: the main method, or mvn test-compile and then this class with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class OrderCancellationServiceBenchmark {
+
+    private static final int ORDERS = 1_000;
+    private static final int CONSUMERS = 3;
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"journal", "sink"})
+    private String queue;
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private final AtomicLongArray consumed = new AtomicLongArray(CONSUMERS);
+    private final AtomicLong produced = new AtomicLong();
+    private final Disposable.Composite consumers = Disposables.composite();
+    private final List<Thread> journalConsumers = new ArrayList<>();
+    private volatile boolean running;
+    private OrchestrationRequestContext ctx;
+    private Path directory;
+    private MappedJournal journal;
+    private Sinks.Many<OrchestrationRequestContext> sink;
+
+    @Setup
+    public void setup() throws IOException {
+        this.ctx = OrchestrationUtil.buildRequestContext(OrchestrationRequestContext.create(OrderRequest.create(1, 2, 3))
+                                                                                    .withProductPrice(100));
+        this.running = true;
+        if("journal".equals(this.queue)){
+            this.directory = Files.createTempDirectory("cancellation-benchmark");
+            this.journal = new MappedJournal(this.directory, 8 * 1024 * 1024, 16);
+            for (var i = 0; i < CONSUMERS; i++)
+                this.startJournalConsumer(i);
+        } else {
+            this.sink = Sinks.many().multicast().onBackpressureBuffer();
+            for (var i = 0; i < CONSUMERS; i++){
+                var index = i;
+                Scheduler thread = Schedulers.newSingle("consumer-" + i);
+                this.consumers.add(thread);
+                this.consumers.add(this.sink.asFlux()
+                                            .publishOn(thread)
+                                            .subscribe(ctx -> this.consumed.incrementAndGet(index)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.running = false;
+        this.consumers.dispose();
+        for (var thread : this.journalConsumers)
+            thread.join();
+        if(this.journal != null){
+            this.journal.close();
+            FileSystemUtils.deleteRecursively(this.directory.toFile());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void cancelOrders() throws IOException {
+        for (var i = 0; i < ORDERS; i++)
+            this.cancelOrder();
+        var target = this.produced.get();
+        for (var i = 0; i < CONSUMERS; i++)
+            while (this.consumed.get(i) < target)
+                LockSupport.parkNanos(10_000);
+    }
+
+    private void cancelOrder() throws IOException {
+        if(this.journal != null){
+            var payload = this.mapper.writeValueAsBytes(this.ctx);
+            while (!this.journal.append(payload))
+                LockSupport.parkNanos(10_000);
+        } else {
+            // the buffer is bounded too (256), so both sides wait for the consumers when they are behind
+            Sinks.EmitResult result;
+            while ((result = this.sink.tryEmitNext(this.ctx)) == Sinks.EmitResult.FAIL_OVERFLOW)
+                LockSupport.parkNanos(10_000);
+            result.orThrow();
+        }
+        this.produced.incrementAndGet();
+    }
+
+    private void startJournalConsumer(int index){
+        var cursor = this.journal.cursor("consumer-" + index);
+        var thread = new Thread(() -> {
+            while (this.running) {
+                var records = cursor.poll(BATCH_SIZE);
+                if(records.isEmpty()){
+                    LockSupport.parkNanos(10_000);
+                    continue;
+                }
+                for (var record : records) {
+                    try {
+                        this.mapper.readValue(record.payload(), OrchestrationRequestContext.class);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                cursor.commit(records.get(records.size() - 1));
+                this.consumed.addAndGet(index, records.size());
+            }
+        }, "consumer-" + index);
+        thread.setDaemon(true);
+        thread.start();
+        this.journalConsumers.add(thread);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderCancellationServiceBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}